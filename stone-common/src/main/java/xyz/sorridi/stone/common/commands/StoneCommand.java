@@ -1,8 +1,13 @@
 package xyz.sorridi.stone.common.commands;
 
-import xyz.sorridi.stone.common.utils.Replace;
+import xyz.sorridi.stone.common.data.base.DataMetrics;
+import xyz.sorridi.stone.common.data.structures.SoftCleaner;
 import xyz.sorridi.stone.common.utils.VersionVerbose;
 import xyz.sorridi.stone.common.utils.data.Array;
+import xyz.sorridi.stone.common.utils.string.Template;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class StoneCommand
 {
@@ -19,6 +24,14 @@ public class StoneCommand
                                                            "&8▎ &cLocation cache size: &7{location}",
                                                            "&8&m-----------------------");
 
+    protected static final String DATA_HEADER = "&8▎ &c&lDATABASE";
+    protected static final String DATA_LINE = "&8▎ &7";
+    protected static final String DATA_EMPTY = "&8▎ &7Nessun worker attivo";
+
+    protected static final String CACHES_HEADER = "&8▎ &c&lCACHE";
+    protected static final String CACHES_LINE = "&8▎ &7";
+    protected static final String CACHES_EMPTY = "&8▎ &7Nessuna cache attiva";
+
     protected static final String[] VERSION_TO_REPLACE = Array.of("{ver}",
                                                                 "{hash}",
                                                                 "{authors}",
@@ -28,26 +41,66 @@ public class StoneCommand
                                                               "{replace}",
                                                               "{location}");
 
+    // Compiled once: stats change on every call and would only churn the Replace cache
+    private static final Template[] VERSION_TEMPLATE = Template.of(VERSION_MESSAGE, VERSION_TO_REPLACE);
+    private static final Template[] STATS_TEMPLATE = Template.of(STATS_MESSAGE, STATS_TO_REPLACE);
+
     protected final String[] verMessage;
     protected String[] statsMessage;
 
     public <V extends VersionVerbose<?, ?>> StoneCommand(V version)
     {
-        verMessage = Replace.of(VERSION_MESSAGE,
-                                VERSION_TO_REPLACE,
-                                version.getVersion(),
-                                version.getHash(),
-                                version.getAuthors(),
-                                version.getSite());
+        verMessage = Template.render(VERSION_TEMPLATE,
+                                     version.getVersion(),
+                                     version.getHash(),
+                                     version.getAuthors(),
+                                     version.getSite());
     }
 
     protected void updateStats(int softMaps, int replaces, int locations)
     {
-        statsMessage = Replace.of(STATS_MESSAGE,
-                                  STATS_TO_REPLACE,
-                                  softMaps,
-                                  replaces,
-                                  checkUnused(locations));
+        statsMessage = Template.render(STATS_TEMPLATE,
+                                      softMaps,
+                                      replaces,
+                                      checkUnused(locations));
+    }
+
+    protected String[] dataMessage()
+    {
+        List<String> lines = new ArrayList<>();
+        List<String> report = DataMetrics.reportAll();
+
+        lines.add(VERSION_MESSAGE[0]);
+        lines.add(DATA_HEADER);
+
+        if (report.isEmpty())
+        {
+            lines.add(DATA_EMPTY);
+        }
+
+        report.forEach(line -> lines.add(DATA_LINE + line));
+        lines.add(VERSION_MESSAGE[0]);
+
+        return lines.toArray(String[]::new);
+    }
+
+    protected String[] cachesMessage()
+    {
+        List<String> lines = new ArrayList<>();
+        List<String> report = SoftCleaner.report();
+
+        lines.add(VERSION_MESSAGE[0]);
+        lines.add(CACHES_HEADER);
+
+        if (report.isEmpty())
+        {
+            lines.add(CACHES_EMPTY);
+        }
+
+        report.forEach(line -> lines.add(CACHES_LINE + line));
+        lines.add(VERSION_MESSAGE[0]);
+
+        return lines.toArray(String[]::new);
     }
 
     private Object checkUnused(int i)
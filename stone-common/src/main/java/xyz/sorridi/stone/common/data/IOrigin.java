@@ -7,15 +7,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
  * Interface representing a data origin.
  * Provides methods for managing the connection details and lifecycle of the origin,
- * including acquiring and releasing resources, setting up, and handling errors during shutdown.
+ * including tracking its readiness, setting up, and handling errors during shutdown.
  *
  * @param <T> The type of the implementing class.
  *
@@ -24,53 +23,26 @@ import java.util.logging.Logger;
  */
 public interface IOrigin<T>
 {
-    AtomicBoolean ready = new AtomicBoolean(false);
+    // Generator of the origin identifiers, each origin keeps its own
     AtomicInteger ID = new AtomicInteger(0);
-    Semaphore semaphore = new Semaphore(1);
 
     /**
-     * Acquires the semaphore for exclusive access to the origin.
+     * Gets the readiness state of this origin.
+     * Each origin owns its own state, so a slow origin never holds back the others.
      *
-     * @throws RuntimeException If the semaphore acquisition is interrupted.
+     * @return The readiness state.
      */
-    default void acquire() throws RuntimeException
-    {
-        try
-        {
-            semaphore.acquire();
-        }
-        catch (InterruptedException e)
-        {
-            throw new RuntimeException("Semaphore acquisition interrupted", e);
-        }
-    }
-
-    /**
-     * Releases the semaphore, allowing other threads to acquire it.
-     */
-    default void release()
-    {
-        semaphore.release();
-    }
+    Readiness getReadiness();
 
     /**
      * Sets the ready state of the origin.
-     * If the origin is ready, the semaphore is released; otherwise, it's acquired.
+     * Callers waiting for the origin are released once it's ready.
      *
      * @param ready The ready state to set.
      */
     default void setReady(boolean ready)
     {
-        IOrigin.ready.set(ready);
-
-        if (ready)
-        {
-            release();
-        }
-        else
-        {
-            acquire();
-        }
+        getReadiness().set(ready);
     }
 
     /**
@@ -80,7 +52,7 @@ public interface IOrigin<T>
      */
     default boolean isReady()
     {
-        return ready.get();
+        return getReadiness().isReady();
     }
 
     /**
@@ -93,6 +65,27 @@ public interface IOrigin<T>
         return !isReady();
     }
 
+    /**
+     * Blocks until the origin is ready.
+     * Once the origin is up, this only costs a volatile read.
+     *
+     * @throws java.util.concurrent.CompletionException If the origin failed to come up.
+     */
+    default void waitUntilReady()
+    {
+        getReadiness().await();
+    }
+
+    /**
+     * Gets a future completed once the origin is ready, without blocking.
+     *
+     * @return The readiness future, completed exceptionally if the origin failed to come up.
+     */
+    default CompletableFuture<Void> whenReady()
+    {
+        return getReadiness().future();
+    }
+
     /**
      * Sets the host of the origin.
      *
@@ -0,0 +1,253 @@
+package xyz.sorridi.stone.common.data;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Delivery;
+import lombok.Getter;
+import lombok.NonNull;
+import org.jetbrains.annotations.NotNull;
+import xyz.sorridi.stone.common.data.base.DataWorker;
+import xyz.sorridi.stone.common.data.transfer.TransferWorker;
+import xyz.sorridi.stone.common.data.transfer.codec.TransferBuffer;
+import xyz.sorridi.stone.common.data.transfer.codec.TransferCodec;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Broadcasts the cache invalidations of {@link DataWorker}s to every node, through a {@link TransferWorker}.
+ * <p>
+ * The names of the queries invalidated by local writes are collected and coalesced, then published
+ * once per tick as a single compact event on a fanout exchange. Each node consumes its own queue bound
+ * to the exchange, skips its own events and invalidates the matching entries of its attached workers,
+ * so every node can cache reads without serving rows written elsewhere for longer than a tick.
+ * </p>
+ * <p>
+ * The bus must be created before the transfer worker is made ready, since it declares its exchange
+ * and queue and subscribes to it.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public class InvalidationBus implements AutoCloseable
+{
+    public static final String DEFAULT_EXCHANGE = "stone.invalidation";
+    public static final long DEFAULT_TICK = 50;
+
+    private static final Codec CODEC = new Codec();
+
+    private final TransferWorker transfer;
+    private final String exchange;
+    private final List<DataWorker> workers;
+    private final Set<String> pending;
+    private final ScheduledExecutorService timer;
+
+    @Getter
+    private final UUID node;
+
+    private final LongAdder sent, received;
+
+    /**
+     * Creates a bus on the default exchange, publishing once every 50 milliseconds (a server tick).
+     *
+     * @param transfer The transfer worker, not ready yet.
+     */
+    public InvalidationBus(@NonNull TransferWorker transfer)
+    {
+        this(transfer, DEFAULT_EXCHANGE, DEFAULT_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a bus.
+     *
+     * @param transfer The transfer worker, not ready yet.
+     * @param exchange The fanout exchange shared by the nodes.
+     * @param tick     The time the invalidations are coalesced for.
+     * @param unit     The time unit of the tick.
+     */
+    public InvalidationBus(@NonNull TransferWorker transfer, @NonNull String exchange, long tick, @NonNull TimeUnit unit)
+    {
+        checkArgument(tick > 0, Err.MUST_BE_POSITIVE.expect("tick"));
+
+        this.transfer = transfer;
+        this.exchange = exchange;
+        this.node = UUID.randomUUID();
+        this.workers = new CopyOnWriteArrayList<>();
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.sent = new LongAdder();
+        this.received = new LongAdder();
+
+        String queue = exchange + "." + node;
+        var loopback = transfer.getOrigin().getLoopback();
+
+        if (loopback != null)
+        {
+            loopback.bind(queue, exchange, "#");
+        }
+        else
+        {
+            transfer.declare((connection, channel, origin) -> {
+                channel.exchangeDeclare(exchange, BuiltinExchangeType.FANOUT, true);
+                channel.queueDeclare(queue, false, false, true, null);
+                channel.queueBind(queue, exchange, "");
+            });
+        }
+
+        transfer.consume(queue, this::receive);
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                                                                        .setNameFormat("invalidation-" + exchange)
+                                                                        .setDaemon(true)
+                                                                        .build());
+        this.timer.scheduleAtFixedRate(this::flush, tick, tick, unit);
+    }
+
+    /**
+     * Attaches a data worker: its invalidations are broadcast, even if its own cache is disabled,
+     * and the invalidations of the other nodes are applied to its cache.
+     *
+     * @param worker The data worker.
+     * @return The invalidation bus (for method chaining).
+     */
+    public InvalidationBus attach(@NonNull DataWorker worker)
+    {
+        workers.add(worker);
+        worker.onInvalidate(pending::add);
+        return this;
+    }
+
+    /**
+     * Gets the number of events published by this node.
+     *
+     * @return The number of sent events.
+     */
+    public long getSent()
+    {
+        return sent.sum();
+    }
+
+    /**
+     * Gets the number of events received from the other nodes.
+     *
+     * @return The number of received events.
+     */
+    public long getReceived()
+    {
+        return received.sum();
+    }
+
+    /**
+     * Publishes the pending invalidations and stops the bus.
+     */
+    @Override
+    public void close()
+    {
+        timer.shutdown();
+        flush();
+    }
+
+    /**
+     * Publishes the invalidations collected since the last tick as a single event.
+     */
+    private void flush()
+    {
+        if (pending.isEmpty())
+        {
+            return;
+        }
+
+        List<String> queries = new ArrayList<>(pending.size());
+
+        for (var iterator = pending.iterator(); iterator.hasNext(); )
+        {
+            queries.add(iterator.next());
+            iterator.remove();
+        }
+
+        sent.increment();
+        transfer.publish(exchange, "", null, CODEC, new Invalidation(node, queries));
+    }
+
+    /**
+     * Applies an event from another node to the attached workers.
+     *
+     * @param delivery The delivered event.
+     * @throws IOException If the event is malformed.
+     */
+    private void receive(Delivery delivery) throws IOException
+    {
+        var event = CODEC.fromBytes(delivery.getBody());
+
+        if (event.node().equals(node))
+        {
+            return;
+        }
+
+        received.increment();
+
+        var queries = event.queries().toArray(String[]::new);
+
+        for (var worker : workers)
+        {
+            worker.invalidateLocally(queries);
+        }
+    }
+
+    /**
+     * An invalidation event.
+     *
+     * @param node    The node the writes happened on.
+     * @param queries The names of the invalidated queries.
+     */
+    private record Invalidation(UUID node, List<String> queries)
+    {
+    }
+
+    /**
+     * Writes the node, then the number of queries followed by their names.
+     */
+    private static final class Codec implements TransferCodec<Invalidation>
+    {
+        @Override
+        public void encode(@NotNull Invalidation value, @NotNull TransferBuffer out)
+        {
+            out.putUUID(value.node()).putVarInt(value.queries().size());
+
+            for (var query : value.queries())
+            {
+                out.putString(query);
+            }
+        }
+
+        @Override
+        public Invalidation decode(@NotNull ByteBuffer in) throws IOException
+        {
+            var node = TransferBuffer.getUUID(in);
+            int size = TransferBuffer.getVarInt(in);
+
+            List<String> queries = new ArrayList<>(Math.min(size, in.remaining()));
+
+            for (int i = 0; i < size; i++)
+            {
+                queries.add(TransferBuffer.getString(in));
+            }
+
+            return new Invalidation(node, queries);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package xyz.sorridi.stone.common.data;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Readiness state of a single {@link IOrigin}.
+ * <p>
+ * Once the origin is up, checking the state costs a single volatile read.
+ * Until then, callers can either block on {@link #await()} or chain on {@link #future()}.
+ * If the origin fails to come up, both see the failure instead of waiting forever.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public final class Readiness
+{
+    private volatile boolean ready;
+    private volatile CompletableFuture<Void> future;
+
+    public Readiness()
+    {
+        this.future = new CompletableFuture<>();
+    }
+
+    /**
+     * Sets the ready state.
+     * Going back to not ready hands out a new future to the callers that come after.
+     *
+     * @param ready The ready state to set.
+     */
+    public synchronized void set(boolean ready)
+    {
+        if (ready)
+        {
+            this.ready = true;
+            future.complete(null);
+        }
+        else
+        {
+            this.ready = false;
+
+            if (future.isDone())
+            {
+                future = new CompletableFuture<>();
+            }
+        }
+    }
+
+    /**
+     * Fails the callers waiting for the origin, which stays not ready.
+     * The next {@link #set(boolean) set(false)} hands out a new future, e.g. when setting up again.
+     *
+     * @param cause The reason the origin could not come up.
+     */
+    public synchronized void fail(Throwable cause)
+    {
+        this.ready = false;
+        future.completeExceptionally(cause);
+    }
+
+    /**
+     * Checks if the origin is ready.
+     *
+     * @return {@code true} if the origin is ready, {@code false} otherwise.
+     */
+    public boolean isReady()
+    {
+        return ready;
+    }
+
+    /**
+     * Gets a future completed once the origin is ready.
+     *
+     * @return The readiness future.
+     */
+    public CompletableFuture<Void> future()
+    {
+        return future;
+    }
+
+    /**
+     * Blocks until the origin is ready.
+     *
+     * @throws java.util.concurrent.CompletionException If the origin failed to come up.
+     */
+    public void await()
+    {
+        while (!ready)
+        {
+            future.join();
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package xyz.sorridi.stone.common.data.base;
+
+import lombok.NonNull;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The circuit breaker of a {@link DataOrigin}, shared by all of its workers.
+ * <p>
+ * After a number of consecutive failures caused by the database being unreachable, the breaker opens
+ * and actions fail fast with a {@link DataUnavailableException} instead of waiting on the pool,
+ * so an outage never starves the pipelines. Once the open time elapses, a single probe action is let
+ * through: its success closes the breaker, its failure opens it again.
+ * </p>
+ * <p>
+ * The breaker is off by default: it guards the actions of an origin once enabled through
+ * {@link DataOrigin#setCircuitBreaker(int, long, TimeUnit)}, or those whose {@link DataPolicy} asks for it.
+ * Only failures matching {@link DataPolicy#isConnectivity(Throwable)} count towards opening it.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public class CircuitBreaker
+{
+    public enum State
+    {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile int threshold;
+    private volatile long openNanos;
+    private volatile long openUntil;
+
+    /**
+     * Creates a circuit breaker opening after 5 consecutive failures, for 5 seconds.
+     */
+    public CircuitBreaker()
+    {
+        this(5, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a circuit breaker.
+     *
+     * @param threshold The number of consecutive failures opening the breaker.
+     * @param open      The time the breaker stays open before letting a probe through.
+     * @param unit      The time unit of the open time.
+     */
+    public CircuitBreaker(int threshold, long open, @NonNull TimeUnit unit)
+    {
+        configure(threshold, open, unit);
+    }
+
+    /**
+     * Changes the thresholds of the breaker.
+     *
+     * @param threshold The number of consecutive failures opening the breaker.
+     * @param open      The time the breaker stays open before letting a probe through.
+     * @param unit      The time unit of the open time.
+     */
+    public void configure(int threshold, long open, @NonNull TimeUnit unit)
+    {
+        checkArgument(threshold > 0, Err.MUST_BE_POSITIVE.expect("threshold"));
+        checkArgument(open > 0, Err.MUST_BE_POSITIVE.expect("open"));
+
+        this.threshold = threshold;
+        this.openNanos = unit.toNanos(open);
+    }
+
+    /**
+     * Checks whether an action may run. While open, only the first caller after the open time
+     * elapses is let through, as the probe.
+     *
+     * @return {@code true} if the action may run, {@code false} if it must fail fast.
+     */
+    public boolean allow()
+    {
+        switch (state.get())
+        {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openUntil >= 0 && state.compareAndSet(State.OPEN, State.HALF_OPEN))
+                {
+                    return true;
+                }
+                // Still open, or another caller is probing
+            default:
+                rejected.increment();
+                return false;
+        }
+    }
+
+    /**
+     * Records an action that reached the database, closing the breaker.
+     */
+    public void success()
+    {
+        failures.set(0);
+
+        if (state.get() != State.CLOSED)
+        {
+            state.set(State.CLOSED);
+        }
+    }
+
+    /**
+     * Records an action that failed because the database was unreachable.
+     */
+    public void failure()
+    {
+        int count = failures.incrementAndGet();
+        State current = state.get();
+
+        if (current == State.HALF_OPEN || (current == State.CLOSED && count >= threshold))
+        {
+            openUntil = System.nanoTime() + openNanos;
+            state.set(State.OPEN);
+        }
+    }
+
+    /**
+     * Gets the state of the breaker.
+     *
+     * @return The state.
+     */
+    public State getState()
+    {
+        return state.get();
+    }
+
+    /**
+     * Gets the number of actions rejected while the breaker was open.
+     *
+     * @return The number of rejected actions.
+     */
+    public long getRejected()
+    {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return state.get().name().toLowerCase() + " (failures=" + failures.get() + " rejected=" + getRejected() + ")";
+    }
+
+}
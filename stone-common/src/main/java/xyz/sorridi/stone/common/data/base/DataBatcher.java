@@ -0,0 +1,405 @@
+package xyz.sorridi.stone.common.data.base;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import xyz.sorridi.stone.common.data.base.op.DataBinder;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Group commit for the writes of a {@link DataWorker}.
+ * <p>
+ * Rows are queued and flushed as JDBC batches inside a single transaction, either when
+ * the batch size is reached or when the linger time of the first queued row expires.
+ * Consecutive rows sharing the same SQL end up in the same {@link PreparedStatement} batch,
+ * so the submission order is preserved. If a batch fails, it is rolled back and its rows
+ * are executed one by one, so every caller gets the outcome of its own row.
+ * </p>
+ * <p>
+ * Rows are added and the batcher shut down under the same lock, so a row is either rejected
+ * or written by the final flush: none is left behind once the batcher terminates.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+class DataBatcher
+{
+    private final DataWorker worker;
+    private final DataOrigin origin;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+
+    private final int batchSize;
+    private final long linger;
+
+    private final ConcurrentLinkedQueue<Entry> queue;
+    private final AtomicInteger pending;
+    private final ReentrantLock lock;
+
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a new batcher.
+     *
+     * @param worker    The worker owning the batcher.
+     * @param origin    The data origin to write to.
+     * @param executor  The executor running the flushes.
+     * @param name      The name of the batcher, used for its timer thread.
+     * @param batchSize The maximum number of rows per flush.
+     * @param linger    The maximum time a row waits before being flushed.
+     * @param unit      The time unit of the linger.
+     */
+    DataBatcher(@NonNull DataWorker worker,
+                @NonNull DataOrigin origin,
+                @NonNull Executor executor,
+                @NonNull String name,
+                int batchSize,
+                long linger,
+                @NonNull TimeUnit unit)
+    {
+        checkArgument(batchSize > 0, Err.MUST_BE_POSITIVE.expect("batchSize"));
+        checkArgument(linger >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("linger"));
+
+        this.worker = worker;
+        this.origin = origin;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.linger = unit.toMillis(linger);
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicInteger();
+        this.lock = new ReentrantLock();
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                                                                        .setNameFormat("batch-" + name + " (#%d)")
+                                                                        .setDaemon(true)
+                                                                        .build());
+    }
+
+    /**
+     * Queues a row to be written with the next flush.
+     *
+     * @param sql    The SQL of the statement.
+     * @param binder The binder of the row parameters.
+     * @return A future completed once the row has been committed.
+     */
+    CompletableFuture<Void> add(@NonNull String sql, @NonNull DataBinder binder)
+    {
+        var entry = new Entry(sql, binder, new CompletableFuture<>());
+
+        lock.lock();
+
+        try
+        {
+            if (shutdown)
+            {
+                entry.future.completeExceptionally(new RejectedExecutionException("The batcher has been shut down"));
+                return entry.future;
+            }
+
+            queue.add(entry);
+            int size = pending.incrementAndGet();
+
+            if (size % batchSize == 0)
+            {
+                flushAsync();
+            }
+            else if (size == 1)
+            {
+                schedule();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        return entry.future;
+    }
+
+    /**
+     * Gets the number of rows waiting to be flushed.
+     *
+     * @return The number of pending rows.
+     */
+    int getPending()
+    {
+        return pending.get();
+    }
+
+    /**
+     * Stops accepting rows and flushes the ones still pending.
+     * The final flush is queued on the executor, so it runs before it terminates;
+     * if the executor is already shut down, the pending rows are failed instead.
+     */
+    void shutdown()
+    {
+        lock.lock();
+
+        try
+        {
+            if (shutdown)
+            {
+                return;
+            }
+
+            shutdown = true;
+            timer.shutdownNow();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        try
+        {
+            executor.execute(this::flushRemaining);
+        }
+        catch (RejectedExecutionException e)
+        {
+            fail(drainAll(), e);
+        }
+    }
+
+    /**
+     * Schedules a flush after the linger time.
+     */
+    private void schedule()
+    {
+        try
+        {
+            timer.schedule(this::flushAsync, linger, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ignored)
+        {
+            // The batcher is shutting down and flushes everything on its own.
+        }
+    }
+
+    /**
+     * Queues a flush on the executor.
+     * If the executor is shut down, no flush can run anymore: the pending rows are failed,
+     * unless the batcher is shut down too and they're left to its final flush.
+     */
+    private void flushAsync()
+    {
+        try
+        {
+            executor.execute(this::flush);
+        }
+        catch (RejectedExecutionException e)
+        {
+            if (!shutdown)
+            {
+                fail(drainAll(), e);
+            }
+        }
+    }
+
+    /**
+     * Flushes up to one batch of rows, then schedules the next flush if rows are left.
+     * Once shut down, the rows left are taken by the final flush.
+     */
+    private void flush()
+    {
+        List<Entry> batch = drain();
+
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        flush(batch);
+
+        if (shutdown)
+        {
+            return;
+        }
+
+        int left = pending.get();
+
+        if (left >= batchSize)
+        {
+            flushAsync();
+        }
+        else if (left > 0)
+        {
+            schedule();
+        }
+    }
+
+    /**
+     * Flushes every row left, one batch at a time, on the calling thread.
+     */
+    private void flushRemaining()
+    {
+        List<Entry> batch;
+
+        while (!(batch = drain()).isEmpty())
+        {
+            flush(batch);
+        }
+    }
+
+    /**
+     * Writes a batch of rows on a pooled connection, failing them if it cannot be acquired.
+     *
+     * @param batch The rows to write.
+     */
+    private void flush(List<Entry> batch)
+    {
+        try
+        {
+            worker.waitUntilReady();
+
+            try (Connection connection = origin.getConnection())
+            {
+                write(connection, batch);
+            }
+        }
+        catch (Exception e)
+        {
+            fail(batch, e);
+        }
+    }
+
+    /**
+     * Removes up to one batch of rows from the queue.
+     *
+     * @return The removed rows.
+     */
+    private List<Entry> drain()
+    {
+        List<Entry> batch = new ArrayList<>(Math.min(batchSize, Math.max(pending.get(), 1)));
+        Entry entry;
+
+        while (batch.size() < batchSize && (entry = queue.poll()) != null)
+        {
+            batch.add(entry);
+        }
+
+        pending.addAndGet(-batch.size());
+        return batch;
+    }
+
+    /**
+     * Removes every row from the queue.
+     *
+     * @return The removed rows.
+     */
+    private List<Entry> drainAll()
+    {
+        List<Entry> all = new ArrayList<>();
+        Entry entry;
+
+        while ((entry = queue.poll()) != null)
+        {
+            all.add(entry);
+        }
+
+        pending.addAndGet(-all.size());
+        return all;
+    }
+
+    /**
+     * Writes the batch in a single transaction, falling back to row by row execution on failure.
+     *
+     * @param connection The connection to write with.
+     * @param batch      The rows to write.
+     * @throws SQLException If the connection cannot be configured.
+     */
+    private void write(Connection connection, List<Entry> batch) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try
+        {
+            int from = 0;
+
+            while (from < batch.size())
+            {
+                String sql = batch.get(from).sql;
+                int to = from;
+
+                try (PreparedStatement statement = connection.prepareStatement(sql))
+                {
+                    while (to < batch.size() && batch.get(to).sql.equals(sql))
+                    {
+                        batch.get(to++).binder.bind(statement);
+                        statement.addBatch();
+                    }
+
+                    statement.executeBatch();
+                }
+
+                from = to;
+            }
+
+            connection.commit();
+            batch.forEach(entry -> entry.future.complete(null));
+        }
+        catch (Exception e)
+        {
+            connection.rollback();
+            connection.setAutoCommit(true);
+
+            batch.forEach(entry -> writeSingle(connection, entry));
+        }
+        finally
+        {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Writes a single row, completing its future with the outcome.
+     *
+     * @param connection The connection to write with.
+     * @param entry      The row to write.
+     */
+    private void writeSingle(Connection connection, Entry entry)
+    {
+        try (PreparedStatement statement = connection.prepareStatement(entry.sql))
+        {
+            entry.binder.bind(statement);
+            statement.executeUpdate();
+            entry.future.complete(null);
+        }
+        catch (Exception e)
+        {
+            entry.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Fails every row of the batch.
+     *
+     * @param batch The rows to fail.
+     * @param cause The cause of the failure.
+     */
+    private void fail(List<Entry> batch, Throwable cause)
+    {
+        batch.forEach(entry -> entry.future.completeExceptionally(cause));
+    }
+
+    private record Entry(String sql, DataBinder binder, CompletableFuture<Void> future)
+    {
+    }
+
+}
@@ -0,0 +1,203 @@
+package xyz.sorridi.stone.common.data.base;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.NonNull;
+import xyz.sorridi.stone.common.data.base.op.DataResult;
+import xyz.sorridi.stone.common.immutable.Err;
+import xyz.sorridi.stone.common.threading.Pipeline;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Read-through cache for the reads of a {@link DataWorker}.
+ * <p>
+ * Results are keyed by the name of the query and its parameters. Missing entries are loaded
+ * on the read pipeline of the worker, concurrent reads of the same key share the same load,
+ * and entries are evicted by size and by age. Entries older than the refresh time are reloaded
+ * in the background on the next read, while the stale value is still served.
+ * Writes issued through the worker invalidate every entry of the queries they affect.
+ * </p>
+ * <p>
+ * Each query has a generation, part of the keys of its entries. Invalidating a query only bumps
+ * its generation: its current entries can't be reached anymore and are evicted by size or age like
+ * any other, so an invalidation costs the same whatever the size of the cache. A load still running
+ * when its query is invalidated stores its result under the old generation, never served again.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+class DataCache
+{
+    private final AsyncLoadingCache<Key, Optional<?>> cache;
+    private final ConcurrentHashMap<String, AtomicLong> generations;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param worker            The worker loading the entries.
+     * @param executor          The executor running the loads and the maintenance.
+     * @param maximumSize       The maximum number of entries.
+     * @param expireAfterWrite  The time after which an entry is evicted, {@code 0} to keep it until evicted by size.
+     * @param refreshAfterWrite The time after which an entry is reloaded on read, {@code 0} to disable.
+     * @param unit              The time unit of the durations.
+     */
+    DataCache(@NonNull DataWorker worker,
+              @NonNull Executor executor,
+              long maximumSize,
+              long expireAfterWrite,
+              long refreshAfterWrite,
+              @NonNull TimeUnit unit)
+    {
+        checkArgument(maximumSize > 0, Err.MUST_BE_POSITIVE.expect("maximumSize"));
+        checkArgument(expireAfterWrite >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("expireAfterWrite"));
+        checkArgument(refreshAfterWrite >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("refreshAfterWrite"));
+
+        var builder = Caffeine.newBuilder()
+                              .maximumSize(maximumSize)
+                              .executor(executor)
+                              .recordStats();
+
+        if (expireAfterWrite > 0)
+        {
+            builder.expireAfterWrite(expireAfterWrite, unit);
+        }
+
+        if (refreshAfterWrite > 0)
+        {
+            builder.refreshAfterWrite(refreshAfterWrite, unit);
+        }
+
+        this.cache = builder.buildAsync((key, ignored) -> worker.submit(key.action, Pipeline.Types.READ));
+        this.generations = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Reads a result through the cache.
+     *
+     * @param query  The name of the query.
+     * @param action The action loading the result on a miss.
+     * @param params The parameters of the query.
+     * @param <T>    The type of the result.
+     * @return A CompletableFuture containing the result wrapped in an Optional.
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<Optional<T>> get(@NonNull String query, @NonNull DataResult<T> action, Object... params)
+    {
+        long generation = generation(query).get();
+        return cache.get(new Key(query, generation, params, action)).thenApply(result -> (Optional<T>) result);
+    }
+
+    /**
+     * Invalidates every entry of the given queries.
+     *
+     * @param queries The names of the queries.
+     */
+    void invalidate(@NonNull String... queries)
+    {
+        for (var query : queries)
+        {
+            generation(query).incrementAndGet();
+        }
+    }
+
+    /**
+     * Invalidates every entry.
+     */
+    void invalidateAll()
+    {
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Gets the generation of a query.
+     *
+     * @param query The name of the query.
+     * @return The generation.
+     */
+    private AtomicLong generation(String query)
+    {
+        var generation = generations.get(query);
+        return generation != null ? generation : generations.computeIfAbsent(query, ignored -> new AtomicLong());
+    }
+
+    /**
+     * Gets the statistics of the cache.
+     *
+     * @return A snapshot of the statistics.
+     */
+    CacheStats getStats()
+    {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * Gets the approximate number of entries, including the invalidated ones not evicted yet.
+     *
+     * @return The number of entries.
+     */
+    long getSize()
+    {
+        return cache.synchronous().estimatedSize();
+    }
+
+    /**
+     * The key of a cached result: the name of the query, its generation and its parameters.
+     * The loading action is carried along for the loads but takes no part in equality.
+     */
+    private static final class Key
+    {
+        private final String query;
+        private final long generation;
+        private final Object[] params;
+        private final DataResult<?> action;
+        private final int hash;
+
+        Key(String query, long generation, Object[] params, DataResult<?> action)
+        {
+            this.query = query;
+            this.generation = generation;
+            this.params = params != null ? params.clone() : new Object[0];
+            this.action = action;
+            this.hash = 31 * (31 * query.hashCode() + Long.hashCode(generation)) + Arrays.deepHashCode(this.params);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+
+            return o instanceof Key key
+                    && hash == key.hash
+                    && generation == key.generation
+                    && query.equals(key.query)
+                    && Arrays.deepEquals(params, key.params);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public String toString()
+        {
+            return query + "#" + generation + Arrays.deepToString(params);
+        }
+    }
+
+}
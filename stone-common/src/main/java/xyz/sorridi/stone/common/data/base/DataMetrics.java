@@ -0,0 +1,271 @@
+package xyz.sorridi.stone.common.data.base;
+
+import lombok.Getter;
+import lombok.NonNull;
+import xyz.sorridi.stone.common.data.structures.LatencyHistogram;
+import xyz.sorridi.stone.common.threading.Pipeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and failure metrics of the actions run by a {@link DataWorker}.
+ * <p>
+ * Each action is timed in three phases: the time spent queued on the pipeline (including the wait
+ * for the origin to be ready), the time taken to acquire a connection from the pool, and the time
+ * spent running. Timings are kept per action name and per {@link Pipeline.Types}, in lock-free
+ * {@link LatencyHistogram}s. Every worker registers its metrics, reachable with {@link #getAll()}.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public class DataMetrics
+{
+    public static final String UNNAMED = "unnamed";
+
+    private static final Map<String, DataMetrics> REGISTRY = new ConcurrentHashMap<>();
+
+    @Getter
+    private final String name;
+
+    private final DataOrigin origin;
+    private final Map<Key, Timer> timers;
+
+    /**
+     * Creates and registers the metrics of a worker.
+     *
+     * @param name   The name of the worker.
+     * @param origin The origin of the worker.
+     */
+    DataMetrics(@NonNull String name, @NonNull DataOrigin origin)
+    {
+        this.name = name;
+        this.origin = origin;
+        this.timers = new ConcurrentHashMap<>();
+
+        REGISTRY.put(name, this);
+    }
+
+    /**
+     * Gets the metrics of every running worker.
+     *
+     * @return The metrics, sorted by worker name.
+     */
+    public static List<DataMetrics> getAll()
+    {
+        List<DataMetrics> all = new ArrayList<>(REGISTRY.values());
+        all.sort(Comparator.comparing(DataMetrics::getName));
+        return all;
+    }
+
+    /**
+     * Reports the metrics of every running worker.
+     *
+     * @return The report lines.
+     */
+    public static List<String> reportAll()
+    {
+        List<String> lines = new ArrayList<>();
+
+        for (var metrics : getAll())
+        {
+            lines.addAll(metrics.report());
+        }
+
+        return lines;
+    }
+
+    /**
+     * Records the timings of an action.
+     *
+     * @param action  The name of the action.
+     * @param type    The pipeline the action ran on.
+     * @param wait    The time spent queued, in nanoseconds.
+     * @param acquire The time taken to acquire a connection, in nanoseconds.
+     * @param execute The time spent running, in nanoseconds.
+     * @param success Whether the action succeeded.
+     */
+    void record(String action, Pipeline.Types type, long wait, long acquire, long execute, boolean success)
+    {
+        var timer = timers.computeIfAbsent(new Key(action, type), key -> new Timer());
+
+        timer.wait.record(wait);
+        timer.acquire.record(acquire);
+        timer.execute.record(execute);
+
+        if (!success)
+        {
+            timer.failures.increment();
+        }
+    }
+
+    /**
+     * Records the timings of an attempt failed by a transient failure, retried afterwards.
+     * Only the failure of the last attempt counts as the failure of the action.
+     *
+     * @param action  The name of the action.
+     * @param type    The pipeline the action runs on.
+     * @param wait    The time the attempt spent queued, in nanoseconds.
+     * @param acquire The time taken to acquire a connection, in nanoseconds.
+     * @param execute The time spent running, in nanoseconds.
+     */
+    void retried(String action, Pipeline.Types type, long wait, long acquire, long execute)
+    {
+        var timer = timers.computeIfAbsent(new Key(action, type), key -> new Timer());
+
+        timer.wait.record(wait);
+        timer.acquire.record(acquire);
+        timer.execute.record(execute);
+        timer.retries.increment();
+    }
+
+    /**
+     * Gets the state of the circuit breaker of the origin.
+     *
+     * @return The breaker state.
+     */
+    public CircuitBreaker.State getBreakerState()
+    {
+        return origin.getBreaker().getState();
+    }
+
+    /**
+     * Gets the timings of an action.
+     *
+     * @param action The name of the action.
+     * @param type   The pipeline the action ran on.
+     * @return The timings, {@code null} if the action never ran.
+     */
+    public Timer getTimer(@NonNull String action, @NonNull Pipeline.Types type)
+    {
+        return timers.get(new Key(action, type));
+    }
+
+    /**
+     * Gets the timings of every action.
+     *
+     * @return The timings, by action and pipeline.
+     */
+    public Map<Key, Timer> getTimers()
+    {
+        return Collections.unmodifiableMap(timers);
+    }
+
+    /**
+     * Reports the pool stats and the breaker state of the origin, and the timings of every action.
+     *
+     * @return The report lines.
+     */
+    public List<String> report()
+    {
+        List<String> lines = new ArrayList<>();
+        var pool = origin.getPoolStats();
+
+        if (pool != null)
+        {
+            lines.add(name + " pool: active=" + pool.getActiveConnections()
+                              + " idle=" + pool.getIdleConnections()
+                              + " total=" + pool.getTotalConnections()
+                              + " waiting=" + pool.getThreadsAwaitingConnection());
+        }
+        else
+        {
+            lines.add(name + " pool: not started");
+        }
+
+        lines.add(name + " breaker: " + origin.getBreaker() + (origin.isBreakerEnabled() ? "" : " [policies only]"));
+
+        Collection<Map.Entry<Key, Timer>> entries = new ArrayList<>(timers.entrySet());
+
+        entries.stream()
+               .sorted(Comparator.comparing((Map.Entry<Key, Timer> entry) -> entry.getKey().action())
+                                 .thenComparing(entry -> entry.getKey().type()))
+               .forEach(entry -> lines.add(entry.getKey() + " " + entry.getValue()));
+
+        return lines;
+    }
+
+    /**
+     * Unregisters the metrics of a worker shut down.
+     */
+    void close()
+    {
+        REGISTRY.remove(name, this);
+    }
+
+    /**
+     * An action on a pipeline.
+     *
+     * @param action The name of the action.
+     * @param type   The pipeline the action ran on.
+     */
+    public record Key(String action, Pipeline.Types type)
+    {
+        @Override
+        public String toString()
+        {
+            return action + "/" + type.name().toLowerCase();
+        }
+    }
+
+    /**
+     * The timings and failures of an action.
+     */
+    public static final class Timer
+    {
+        @Getter
+        private final LatencyHistogram wait = new LatencyHistogram();
+
+        @Getter
+        private final LatencyHistogram acquire = new LatencyHistogram();
+
+        @Getter
+        private final LatencyHistogram execute = new LatencyHistogram();
+
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+
+        public long getCount()
+        {
+            return execute.getCount();
+        }
+
+        public long getFailures()
+        {
+            return failures.sum();
+        }
+
+        public long getRetries()
+        {
+            return retries.sum();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "n=" + getCount()
+                    + " fail=" + getFailures()
+                    + " retry=" + getRetries()
+                    + " wait=" + format(wait)
+                    + " acquire=" + format(acquire)
+                    + " exec=" + format(execute);
+        }
+
+        private static String format(LatencyHistogram histogram)
+        {
+            return String.format("%.2f/%.2f/%.2fms",
+                                 histogram.getPercentile(50, TimeUnit.MILLISECONDS),
+                                 histogram.getPercentile(99, TimeUnit.MILLISECONDS),
+                                 histogram.getMax(TimeUnit.MILLISECONDS));
+        }
+    }
+
+}
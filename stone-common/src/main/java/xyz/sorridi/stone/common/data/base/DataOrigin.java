@@ -2,18 +2,38 @@ package xyz.sorridi.stone.common.data.base;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.util.DriverDataSource;
 import lombok.Getter;
 import lombok.NonNull;
 import org.jetbrains.annotations.Nullable;
 import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.SQLDialect;
+import org.jooq.exception.DataAccessException;
+import org.jooq.conf.Settings;
 import org.jooq.impl.DSL;
+import org.jooq.tools.jdbc.JDBCUtils;
 import xyz.sorridi.stone.common.data.IOrigin;
+import xyz.sorridi.stone.common.data.Readiness;
+import xyz.sorridi.stone.common.immutable.Err;
 import xyz.sorridi.stone.common.threading.Pipeline;
+import xyz.sorridi.stone.common.threading.Pool;
 import xyz.sorridi.stone.common.utils.discord.StoneLogger;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 /**
@@ -34,9 +54,41 @@ public class DataOrigin implements IOrigin<DataOrigin>
     private Map<String, String> properties;
     private boolean useDefaults;
 
+    private SQLDialect dialect;
+    private volatile DSLContext context;
+    private final Map<String, DataTemplate> templates = new ConcurrentHashMap<>();
+    private final List<WriteBehind<?, ?>> writeBehinds = new CopyOnWriteArrayList<>();
+
+    // One per pooled connection: the workers wait on it, bounded by their deadline, instead of on the pool
+    private volatile Semaphore connectionPermits = new Semaphore(1);
+
+    // Runs the bootstraps of every origin, each connection on its own virtual thread
+    private static final Pool BOOTSTRAP = new Pool("data_bootstrap", new Semaphore(Runtime.getRuntime().availableProcessors() * 2));
+
+    // Runs the warm-up borrows, apart from the bootstraps waiting on them so they never starve each other
+    private static final Pool WARM_UP = new Pool("data_warm_up", new Semaphore(Runtime.getRuntime().availableProcessors() * 2));
+
+    private static final long REPLICA_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final long REPLICA_COOLDOWN = TimeUnit.SECONDS.toNanos(5);
+
+    private final List<String[]> replicaHosts = new ArrayList<>();
+    private volatile List<Replica> replicas = List.of();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private ReplicaRouting routing = ReplicaRouting.ROUND_ROBIN;
+
     @Getter
     private StoneLogger logger;
 
+    @Getter
+    private final Readiness readiness = new Readiness();
+
+    @Getter
+    private final CircuitBreaker breaker = new CircuitBreaker();
+
+    // Off unless asked for: the breaker then guards every action, not only those whose policy asks for it
+    @Getter
+    private volatile boolean breakerEnabled;
+
     public DataOrigin()
     {
     }
@@ -143,8 +195,79 @@ public class DataOrigin implements IOrigin<DataOrigin>
         return this;
     }
 
+    /**
+     * Adds a read replica, with its own connection pool sized like the primary one.
+     * Reads submitted on the {@link Pipeline.Types#READ} pipeline are routed to the replicas,
+     * falling back to the primary if none can hand out a connection.
+     *
+     * @param host The host of the replica.
+     * @param port The port of the replica.
+     * @return The data origin.
+     */
+    public DataOrigin addReplica(@NonNull String host, @NonNull String port)
+    {
+        replicaHosts.add(new String[] { host, port });
+        return this;
+    }
+
+    /**
+     * Sets how the replica serving a read is picked.
+     *
+     * @param routing The routing of the reads.
+     * @return The data origin.
+     */
+    public DataOrigin setReplicaRouting(@NonNull ReplicaRouting routing)
+    {
+        this.routing = routing;
+        return this;
+    }
+
+    /**
+     * Sets the SQL dialect of the origin. If none is set, it's guessed from the url.
+     *
+     * @param dialect The dialect.
+     * @return The data origin.
+     */
+    public DataOrigin setDialect(@Nullable SQLDialect dialect)
+    {
+        this.dialect = dialect;
+        return this;
+    }
+
+    /**
+     * Enables the circuit breaker of the origin for every action and sets when it opens,
+     * failing actions fast while the database is unreachable.
+     *
+     * @param threshold The number of consecutive failures opening the breaker.
+     * @param open      The time the breaker stays open before letting a probe through.
+     * @param unit      The time unit of the open time.
+     * @return The data origin.
+     */
+    public DataOrigin setCircuitBreaker(int threshold, long open, @NonNull TimeUnit unit)
+    {
+        breaker.configure(threshold, open, unit);
+        breakerEnabled = true;
+        return this;
+    }
+
     @Override
     public void setup()
+    {
+        setupAsync();
+    }
+
+    /**
+     * Sets up the origin without blocking the caller.
+     * <p>
+     * The database is created on a single unpooled connection, then the pool is started directly on it
+     * and warmed up to its minimum idle connections, borrowed in parallel. The origin becomes ready once
+     * the pool is warm: chain on the returned future, or on {@link #whenReady()}, instead of waiting for it.
+     * </p>
+     *
+     * @return A future completed once the origin is ready, exceptionally if the bootstrap fails,
+     *         in which case {@link #whenReady()} fails too.
+     */
+    public CompletableFuture<Void> setupAsync()
     {
         setReady(false);
 
@@ -154,16 +277,10 @@ public class DataOrigin implements IOrigin<DataOrigin>
         config.setPassword(password);
 
         config.setDriverClassName(driver);
-        config.setJdbcUrl("jdbc:" + url + "://" + host + ":" + port + "/");
+        config.setJdbcUrl(getServerUrl());
 
-        if (poolSize > 0)
-        {
-            config.setMaximumPoolSize(poolSize);
-        }
-        else
-        {
-            config.setMaximumPoolSize(Runtime.getRuntime().availableProcessors() * 2);
-        }
+        config.setMaximumPoolSize(getMaximumPoolSize());
+        connectionPermits = new Semaphore(getMaximumPoolSize(), true);
 
         if (useDefaults)
         {
@@ -172,39 +289,175 @@ public class DataOrigin implements IOrigin<DataOrigin>
             config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
         }
 
+        // Connector/J reads the whole result set in memory and ignores the fetch size of streams without it
+        if (getDialect().family() == SQLDialect.MYSQL)
+        {
+            config.addDataSourceProperty("useCursorFetch", "true");
+        }
+
         if (properties != null)
         {
             properties.forEach(config::addDataSourceProperty);
         }
 
-        dataSource = new HikariDataSource(config);
+        return CompletableFuture.runAsync(this::bootstrap, BOOTSTRAP)
+                                .whenComplete((ignored, throwable) ->
+                                              {
+                                                  if (throwable == null)
+                                                  {
+                                                      return;
+                                                  }
+
+                                                  // Releases the callers waiting for the origin
+                                                  readiness.fail(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+
+                                                  if (throwable instanceof Exception e && logger != null)
+                                                  {
+                                                      logger.exception("Failed to set up the origin " + host + ":" + port, e);
+                                                  }
+                                              });
+    }
+
+    /**
+     * Creates the database, starts the pools and marks the origin as ready.
+     */
+    private void bootstrap()
+    {
+        if (database != null)
+        {
+            createDatabase();
+            config.setJdbcUrl(getServerUrl() + database);
+        }
+
+        var dataSource = new HikariDataSource(config);
+        warm(dataSource, Math.min(config.getMinimumIdle(), config.getMaximumPoolSize()));
+
+        this.dataSource = dataSource;
+        replicas = createReplicas();
+        context = DSL.using(dataSource, getDialect(), new Settings().withExecuteLogging(false));
+        setReady(true);
+    }
 
-        DataWorker worker = new DataWorker(this, true);
-        worker.submit((connection, origin) ->
-                      {
-                          DSLContext context = DSL.using(connection);
+    /**
+     * Creates the database if it doesn't exist, on a single connection outside of any pool.
+     *
+     * @throws IllegalStateException If the database cannot be created.
+     */
+    private void createDatabase()
+    {
+        var unpooled = new DriverDataSource(getServerUrl(), driver, config.getDataSourceProperties(), username, password);
+
+        try (Connection connection = unpooled.getConnection())
+        {
+            DSL.using(connection, getDialect())
+               .createDatabaseIfNotExists(database)
+               .execute();
+        }
+        catch (SQLException | DataAccessException e)
+        {
+            throw new IllegalStateException("Failed to create the database " + database, e);
+        }
+    }
 
-                          context.createDatabaseIfNotExists(database)
-                                 .execute();
-                      },
-                      Pipeline.Types.WRITE)
-              .thenRun(() ->
-                       {
-                           close(dataSource);
-                           worker.shutdown();
+    /**
+     * Borrows connections from a pool in parallel, then returns them, so the pool starts with
+     * its minimum idle connections instead of opening them on the first requests.
+     * A failure only costs the warm-up: the pool keeps filling itself in the background.
+     *
+     * @param dataSource The pool to warm up.
+     * @param count      The number of connections to open.
+     */
+    private void warm(HikariDataSource dataSource, int count)
+    {
+        List<CompletableFuture<Connection>> borrowed = new ArrayList<>(count);
 
-                           setDatabase(database);
-                           config.setJdbcUrl("jdbc:" + url + "://" + host + ":" + port + "/" + database);
+        for (int i = 0; i < count; i++)
+        {
+            borrowed.add(CompletableFuture.supplyAsync(() ->
+                                                       {
+                                                           try
+                                                           {
+                                                               return dataSource.getConnection();
+                                                           }
+                                                           catch (SQLException e)
+                                                           {
+                                                               throw new CompletionException(e);
+                                                           }
+                                                       },
+                                                       WARM_UP));
+        }
 
-                           dataSource = new HikariDataSource(config);
-                           setReady(true);
-                       });
+        try
+        {
+            CompletableFuture.allOf(borrowed.toArray(CompletableFuture[]::new)).join();
+        }
+        catch (CompletionException e)
+        {
+            if (logger != null)
+            {
+                logger.warn("Failed to warm up the pool of " + host + ":" + port + ": " + e.getCause());
+            }
+        }
+        finally
+        {
+            for (var connection : borrowed)
+            {
+                connection.thenAccept(this::close);
+            }
+        }
     }
 
+    /**
+     * Gets the url of the server, without the database.
+     *
+     * @return The server url.
+     */
+    private String getServerUrl()
+    {
+        return "jdbc:" + url + "://" + host + ":" + port + "/";
+    }
+
+    /**
+     * Shuts down the origin.
+     * The write-behind stores are flushed synchronously first, so no pending write is lost.
+     */
     @Override
     public void shutdown()
     {
-        dataSource.close();
+        for (var writeBehind : writeBehinds)
+        {
+            writeBehind.close();
+        }
+
+        for (var replica : replicas)
+        {
+            replica.dataSource().close();
+        }
+
+        if (dataSource != null)
+        {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Registers a write-behind store, to be flushed on shutdown.
+     *
+     * @param writeBehind The write-behind store.
+     */
+    void register(@NonNull WriteBehind<?, ?> writeBehind)
+    {
+        writeBehinds.add(writeBehind);
+    }
+
+    /**
+     * Unregisters a closed write-behind store.
+     *
+     * @param writeBehind The write-behind store.
+     */
+    void unregister(@NonNull WriteBehind<?, ?> writeBehind)
+    {
+        writeBehinds.remove(writeBehind);
     }
     
     /**
@@ -219,19 +472,284 @@ public class DataOrigin implements IOrigin<DataOrigin>
     }
 
     /**
-     * Gets whether the data source is ready.
+     * Gets a connection for the given pipeline.
+     * Reads go to a replica when there is one available, everything else goes to the primary.
+     * Since replicas lag behind the primary, reads that must see a write just made should use
+     * {@link #getConnection()} instead.
+     *
+     * @param type The type of pipeline the connection is used by.
+     * @return The connection.
+     * @throws SQLException If an error occurs while getting the connection.
+     */
+    public Connection getConnection(@NonNull Pipeline.Types type) throws SQLException
+    {
+        if (type != Pipeline.Types.READ)
+        {
+            return getConnection();
+        }
+
+        var replica = pickReplica();
+
+        if (replica != null)
+        {
+            try
+            {
+                return replica.dataSource().getConnection();
+            }
+            catch (SQLException e)
+            {
+                // Leave the replica alone for a while, the primary takes over its reads
+                replica.down(REPLICA_COOLDOWN);
+
+                if (logger != null)
+                {
+                    logger.warn("Replica " + replica.dataSource().getPoolName() + " unavailable, reading from the primary");
+                }
+            }
+        }
+
+        return getConnection();
+    }
+
+    /**
+     * Gets the permits of the connections borrowed by the workers, one per connection of the pool.
+     * A worker takes a permit before borrowing a connection and gives it back once it's released,
+     * so it can give up on the wait at its deadline instead of blocking for the whole pool timeout.
+     * The permits must be released to the semaphore they were taken from, since it is replaced on setup.
+     *
+     * @return The permits.
+     */
+    Semaphore getConnectionPermits()
+    {
+        return connectionPermits;
+    }
+
+    /**
+     * Gets the live stats of the primary connection pool.
+     *
+     * @return The pool stats, {@code null} if the pool is not started.
+     */
+    public HikariPoolMXBean getPoolStats()
+    {
+        var dataSource = this.dataSource;
+        return dataSource != null ? dataSource.getHikariPoolMXBean() : null;
+    }
+
+    /**
+     * Gets the number of replicas.
+     *
+     * @return The number of replicas.
+     */
+    public int getReplicaCount()
+    {
+        return replicas.size();
+    }
+
+    /**
+     * Picks the replica serving a read, skipping the ones that recently failed.
+     *
+     * @return The replica, {@code null} if none is available.
+     */
+    private Replica pickReplica()
+    {
+        var replicas = this.replicas;
+        int size = replicas.size();
+
+        if (size == 0)
+        {
+            return null;
+        }
+
+        long now = System.nanoTime();
+
+        if (routing == ReplicaRouting.LEAST_LOADED)
+        {
+            Replica best = null;
+            int bestLoad = Integer.MAX_VALUE;
+
+            for (var replica : replicas)
+            {
+                if (!replica.isUp(now))
+                {
+                    continue;
+                }
+
+                var pool = replica.dataSource().getHikariPoolMXBean();
+                int load = pool != null ? pool.getActiveConnections() + pool.getThreadsAwaitingConnection() : 0;
+
+                if (load < bestLoad)
+                {
+                    best = replica;
+                    bestLoad = load;
+                }
+            }
+
+            return best;
+        }
+
+        int start = nextReplica.getAndIncrement();
+
+        for (int i = 0; i < size; i++)
+        {
+            var replica = replicas.get(Math.floorMod(start + i, size));
+
+            if (replica.isUp(now))
+            {
+                return replica;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates the pools of the replicas, copying the configuration of the primary.
+     * A replica only waits a short time for a connection, so a dead one quickly falls back to the primary.
+     *
+     * @return The replicas.
+     */
+    private List<Replica> createReplicas()
+    {
+        List<Replica> created = new ArrayList<>(replicaHosts.size());
+
+        for (var replicaHost : replicaHosts)
+        {
+            HikariConfig replicaConfig = new HikariConfig();
+            config.copyStateTo(replicaConfig);
+
+            replicaConfig.setPoolName("replica-" + replicaHost[0] + ":" + replicaHost[1]);
+            replicaConfig.setJdbcUrl("jdbc:" + url + "://" + replicaHost[0] + ":" + replicaHost[1] + "/" + (database != null ? database : ""));
+            replicaConfig.setReadOnly(true);
+            replicaConfig.setConnectionTimeout(Math.min(config.getConnectionTimeout(), REPLICA_TIMEOUT));
+            replicaConfig.setInitializationFailTimeout(-1);
+
+            created.add(new Replica(new HikariDataSource(replicaConfig)));
+        }
+
+        return List.copyOf(created);
+    }
+
+    /**
+     * The pool of a read replica.
+     */
+    private static final class Replica
+    {
+        private final HikariDataSource dataSource;
+        private volatile long downUntil;
+
+        Replica(HikariDataSource dataSource)
+        {
+            this.dataSource = dataSource;
+            this.downUntil = System.nanoTime();
+        }
+
+        HikariDataSource dataSource()
+        {
+            return dataSource;
+        }
+
+        boolean isUp(long now)
+        {
+            return now - downUntil >= 0;
+        }
+
+        void down(long nanos)
+        {
+            downUntil = System.nanoTime() + nanos;
+        }
+    }
+
+    /**
+     * Gets the shared DSL context, bound to the connection pool.
+     * The context is thread-safe: use it instead of creating one per action with {@code DSL.using(connection)}.
      *
-     * @return Whether the data source is ready.
+     * @return The DSL context.
+     * @throws IllegalStateException If the origin is not set up yet.
      */
-    public boolean isReady()
+    public DSLContext getContext()
     {
-        return ready.get();
+        DSLContext context = this.context;
+
+        if (context == null)
+        {
+            throw new IllegalStateException("The origin is not set up yet");
+        }
+
+        return context;
     }
 
-    public void waitUntilReady()
+    /**
+     * Gets the SQL dialect of the origin.
+     *
+     * @return The set dialect, or the one guessed from the url.
+     */
+    public SQLDialect getDialect()
+    {
+        if (dialect == null)
+        {
+            dialect = JDBCUtils.dialect("jdbc:" + url + ":");
+        }
+
+        return dialect;
+    }
+
+    /**
+     * Registers a template from plain SQL, with {@code ?} placeholders.
+     * A template with the same name is replaced.
+     *
+     * @param name The name of the template.
+     * @param sql  The SQL of the template.
+     * @return The template.
+     */
+    public DataTemplate template(@NonNull String name, @NonNull String sql)
+    {
+        var template = new DataTemplate(this, name, sql);
+        templates.put(name, template);
+        return template;
+    }
+
+    /**
+     * Registers a template from a jOOQ query, rendered once on first use.
+     * A template with the same name is replaced.
+     *
+     * @param name    The name of the template.
+     * @param builder Builds the query, its bind values becoming the placeholders.
+     * @return The template.
+     */
+    public DataTemplate template(@NonNull String name, @NonNull Function<DSLContext, Query> builder)
+    {
+        var template = new DataTemplate(this, name, builder);
+        templates.put(name, template);
+        return template;
+    }
+
+    /**
+     * Gets a registered template.
+     *
+     * @param name The name of the template.
+     * @return The template.
+     * @throws IllegalArgumentException If no template has this name.
+     */
+    public DataTemplate getTemplate(@NonNull String name)
+    {
+        var template = templates.get(name);
+
+        if (template == null)
+        {
+            throw new IllegalArgumentException(Err.NOT_FOUND.expect(name));
+        }
+
+        return template;
+    }
+
+    /**
+     * Gets the maximum size of the connection pool.
+     *
+     * @return The configured pool size, or twice the number of processors if none was set.
+     */
+    public int getMaximumPoolSize()
     {
-        acquire();
-        release();
+        return poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2;
     }
 
 }
@@ -0,0 +1,228 @@
+package xyz.sorridi.stone.common.data.base;
+
+import lombok.Getter;
+import lombok.NonNull;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The execution policy of an action submitted to a {@link DataWorker}.
+ * <p>
+ * A deadline bounds the whole action, from submission to completion: an action still queued or
+ * waiting for the origin past its deadline fails with a {@link java.sql.SQLTimeoutException} without
+ * running, and the statements of a running one are cut by the network timeout of its connection.
+ * Actions failing with a transient error are retried with an exponential, jittered backoff,
+ * scheduled without holding a pipeline thread. An action may also go through the {@link CircuitBreaker}
+ * of its origin, which is off by default: see {@link #withCircuitBreaker()}.
+ * </p>
+ * Policies are immutable: every {@code with} method returns a copy.
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+@Getter
+public final class DataPolicy
+{
+    // Runs every action once, with no deadline
+    public static final DataPolicy NONE = new DataPolicy(0, 0, 0, 0, false);
+
+    // MySQL/MariaDB error codes: lock wait timeout, deadlock, too many connections, server gone away
+    private static final int[] TRANSIENT_CODES = { 1205, 1213, 1040, 2006, 2013 };
+
+    // Bounds the walk of a cause chain, in case it loops
+    private static final int MAX_CAUSES = 16;
+
+    private final long deadline;
+    private final int retries;
+    private final long backoff, maxBackoff;
+    private final boolean circuitBreaker;
+
+    private DataPolicy(long deadline, int retries, long backoff, long maxBackoff, boolean circuitBreaker)
+    {
+        this.deadline = deadline;
+        this.retries = retries;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Returns a copy of this policy with a deadline.
+     *
+     * @param deadline The time allowed to the action, from submission to completion.
+     * @param unit     The time unit of the deadline.
+     * @return The policy.
+     */
+    public DataPolicy withDeadline(long deadline, @NonNull TimeUnit unit)
+    {
+        checkArgument(deadline > 0, Err.MUST_BE_POSITIVE.expect("deadline"));
+
+        return new DataPolicy(unit.toNanos(deadline), retries, backoff, maxBackoff, circuitBreaker);
+    }
+
+    /**
+     * Returns a copy of this policy retrying transient failures.
+     * The n-th retry waits a random time between half and all of {@code backoff * 2^(n-1)},
+     * capped to {@code maxBackoff}, so callers failing together don't retry together.
+     *
+     * @param retries    The maximum number of retries.
+     * @param backoff    The base backoff.
+     * @param maxBackoff The maximum backoff.
+     * @param unit       The time unit of the backoffs.
+     * @return The policy.
+     */
+    public DataPolicy withRetries(int retries, long backoff, long maxBackoff, @NonNull TimeUnit unit)
+    {
+        checkArgument(retries >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("retries"));
+        checkArgument(backoff > 0, Err.MUST_BE_POSITIVE.expect("backoff"));
+        checkArgument(maxBackoff - backoff >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("maxBackoff - backoff"));
+
+        return new DataPolicy(deadline, retries, unit.toNanos(backoff), unit.toNanos(maxBackoff), circuitBreaker);
+    }
+
+    /**
+     * Returns a copy of this policy going through the circuit breaker of the origin, even if the origin
+     * doesn't enable it for every action through {@link DataOrigin#setCircuitBreaker(int, long, TimeUnit)}.
+     *
+     * @return The policy.
+     */
+    public DataPolicy withCircuitBreaker()
+    {
+        return new DataPolicy(deadline, retries, backoff, maxBackoff, true);
+    }
+
+    /**
+     * Gets the time to wait before a retry, jittered.
+     *
+     * @param attempt The number of the retry, starting from {@code 1}.
+     * @return The backoff, in nanoseconds.
+     */
+    long backoff(int attempt)
+    {
+        long ceiling = backoff << Math.min(attempt - 1, 30);
+
+        if (ceiling <= 0 || ceiling > maxBackoff)
+        {
+            ceiling = maxBackoff;
+        }
+
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * Checks whether a failure is transient: the same action may succeed if run again.
+     * Covers lost or refused connections, pool timeouts, deadlocks, lock wait timeouts
+     * and serialization failures, anywhere in the cause chain, so a jOOQ
+     * {@link org.jooq.exception.DataAccessException} wrapping one is transient too.
+     *
+     * @param failure The failure.
+     * @return {@code true} if the failure is transient.
+     */
+    public static boolean isTransient(Throwable failure)
+    {
+        for (int i = 0; failure != null && i < MAX_CAUSES; i++, failure = failure.getCause())
+        {
+            if (failure instanceof DataUnavailableException)
+            {
+                return false;
+            }
+
+            if (failure instanceof SQLException sql && isTransient(sql))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks whether a failure means the database is unreachable, the only kind counted by the
+     * {@link CircuitBreaker}: a connection exception, a recoverable error, or a connection the pool
+     * failed to open. Slow queries, deadlocks and a pool merely exhausted by the load are not.
+     *
+     * @param failure The failure.
+     * @return {@code true} if the database is unreachable.
+     */
+    public static boolean isConnectivity(Throwable failure)
+    {
+        for (int i = 0; failure != null && i < MAX_CAUSES; i++, failure = failure.getCause())
+        {
+            if (failure instanceof DataUnavailableException)
+            {
+                return false;
+            }
+
+            if (!(failure instanceof SQLException sql))
+            {
+                continue;
+            }
+
+            String state = sql.getSQLState();
+
+            if (sql instanceof SQLRecoverableException || (state != null && state.startsWith("08")))
+            {
+                return true;
+            }
+
+            // The pool only sets a cause when it failed to open a connection, not when it's exhausted
+            if (sql instanceof SQLTransientConnectionException && sql.getCause() != null)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks whether a single exception, ignoring its causes, is transient.
+     *
+     * @param sql The exception.
+     * @return {@code true} if the exception is transient.
+     */
+    private static boolean isTransient(SQLException sql)
+    {
+        if (sql instanceof SQLTransientException || sql instanceof SQLRecoverableException)
+        {
+            return true;
+        }
+
+        String state = sql.getSQLState();
+
+        // 08: connection exception, 40: transaction rollback (serialization failure, deadlock)
+        if (state != null && (state.startsWith("08") || state.startsWith("40")))
+        {
+            return true;
+        }
+
+        for (int code : TRANSIENT_CODES)
+        {
+            if (sql.getErrorCode() == code)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DataPolicy{deadline=" + TimeUnit.NANOSECONDS.toMillis(deadline) + "ms"
+                + ", retries=" + retries
+                + ", backoff=" + TimeUnit.NANOSECONDS.toMillis(backoff) + "ms"
+                + ", maxBackoff=" + TimeUnit.NANOSECONDS.toMillis(maxBackoff) + "ms"
+                + ", circuitBreaker=" + circuitBreaker + "}";
+    }
+
+}
@@ -0,0 +1,283 @@
+package xyz.sorridi.stone.common.data.base;
+
+import lombok.NonNull;
+import xyz.sorridi.stone.common.data.base.op.DataBinder;
+import xyz.sorridi.stone.common.data.base.op.DataMapper;
+import xyz.sorridi.stone.common.threading.Pipeline;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A query whose rows are pushed to a {@link Flow.Subscriber} as they're requested.
+ * <p>
+ * Each subscription opens its own forward-only, read-only cursor on a pooled connection, with the
+ * given fetch size, and maps rows only while the subscriber has outstanding demand: once it stops
+ * requesting, no further rows are read. The connection is released as soon as the last row is read,
+ * the query fails or the subscription is cancelled.
+ * </p>
+ * <p>
+ * Drivers only honor the fetch size under some conditions: MySQL needs {@code useCursorFetch=true},
+ * which {@link DataOrigin} sets on MySQL origins, PostgreSQL a transaction, which the stream opens
+ * by disabling auto-commit on its connection.
+ * </p>
+ *
+ * @param <T> The type of the mapped rows.
+ * @author atom7xyz
+ * @since 1.0
+ */
+class DataStream<T> implements Flow.Publisher<T>
+{
+    private final DataWorker worker;
+    private final DataOrigin origin;
+    private final Executor executor;
+
+    private final String sql;
+    private final DataBinder binder;
+    private final DataMapper<T> mapper;
+    private final int fetchSize;
+
+    /**
+     * Creates a new stream.
+     *
+     * @param worker    The worker owning the stream.
+     * @param origin    The data origin to read from.
+     * @param executor  The executor reading the rows.
+     * @param sql       The SQL of the query.
+     * @param binder    The binder of the query parameters.
+     * @param mapper    The mapper of the rows.
+     * @param fetchSize The number of rows fetched from the database at once.
+     */
+    DataStream(@NonNull DataWorker worker,
+               @NonNull DataOrigin origin,
+               @NonNull Executor executor,
+               @NonNull String sql,
+               @NonNull DataBinder binder,
+               @NonNull DataMapper<T> mapper,
+               int fetchSize)
+    {
+        this.worker = worker;
+        this.origin = origin;
+        this.executor = executor;
+        this.sql = sql;
+        this.binder = binder;
+        this.mapper = mapper;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber)
+    {
+        var subscription = new Cursor(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Opens a forward-only cursor for the query.
+     *
+     * @param connection The connection to use.
+     * @return The result set, its statement closed along with it.
+     * @throws SQLException If the query fails.
+     */
+    ResultSet open(Connection connection) throws SQLException
+    {
+        connection.setAutoCommit(false);
+
+        PreparedStatement statement = connection.prepareStatement(sql,
+                                                                  ResultSet.TYPE_FORWARD_ONLY,
+                                                                  ResultSet.CONCUR_READ_ONLY);
+
+        try
+        {
+            statement.setFetchSize(fetchSize);
+            binder.bind(statement);
+            statement.closeOnCompletion();
+
+            return statement.executeQuery();
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            statement.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the current row.
+     *
+     * @param rows The result set.
+     * @return The mapped row.
+     * @throws SQLException If the row cannot be read.
+     */
+    T map(ResultSet rows) throws SQLException
+    {
+        return mapper.map(rows);
+    }
+
+    /**
+     * Releases the connection of a stream, ending its read-only transaction.
+     *
+     * @param connection The connection to release.
+     * @param rows       The result set to close, may be {@code null}.
+     */
+    static void release(Connection connection, ResultSet rows)
+    {
+        try
+        {
+            if (rows != null)
+            {
+                rows.close();
+            }
+
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        catch (SQLException ignored)
+        {
+            // The connection is being discarded anyway.
+        }
+        finally
+        {
+            try
+            {
+                connection.close();
+            }
+            catch (SQLException ignored)
+            {
+                // Already closed.
+            }
+        }
+    }
+
+    /**
+     * The subscription of a single subscriber, reading rows only as long as there is demand.
+     */
+    private class Cursor implements Flow.Subscription, Runnable
+    {
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private final AtomicLong demand;
+        private final AtomicInteger wip;
+        private final AtomicBoolean done;
+
+        // Only touched by the drain loop
+        private Connection connection;
+        private ResultSet rows;
+
+        Cursor(Flow.Subscriber<? super T> subscriber)
+        {
+            this.subscriber = subscriber;
+            this.demand = new AtomicLong();
+            this.wip = new AtomicInteger();
+            this.done = new AtomicBoolean();
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            schedule();
+        }
+
+        @Override
+        public void cancel()
+        {
+            done.set(true);
+            schedule();
+        }
+
+        private void schedule()
+        {
+            if (wip.getAndIncrement() == 0)
+            {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Drain loop: reads rows while there is demand, or releases the connection once done.
+         */
+        @Override
+        public void run()
+        {
+            int missed = 1;
+
+            do
+            {
+                drain();
+                missed = wip.addAndGet(-missed);
+            }
+            while (missed != 0);
+        }
+
+        private void drain()
+        {
+            if (done.get())
+            {
+                close();
+                return;
+            }
+
+            try
+            {
+                if (connection == null)
+                {
+                    worker.waitUntilReady();
+
+                    connection = origin.getConnection(Pipeline.Types.READ);
+                    rows = open(connection);
+                }
+
+                while (demand.get() > 0 && !done.get())
+                {
+                    if (!rows.next())
+                    {
+                        done.set(true);
+                        close();
+                        subscriber.onComplete();
+                        return;
+                    }
+
+                    demand.decrementAndGet();
+                    subscriber.onNext(map(rows));
+                }
+
+                if (done.get())
+                {
+                    close();
+                }
+            }
+            catch (Exception e)
+            {
+                done.set(true);
+                close();
+                subscriber.onError(e);
+            }
+        }
+
+        private void close()
+        {
+            if (connection != null)
+            {
+                release(connection, rows);
+                connection = null;
+                rows = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package xyz.sorridi.stone.common.data.base;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.conf.ParamType;
+import xyz.sorridi.stone.common.data.base.op.DataMapper;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A named query, rendered to SQL once and executed with positional parameters.
+ * <p>
+ * Templates built with jOOQ are rendered lazily, on first use, with the dialect of their origin;
+ * every execution after that only prepares the cached SQL (hitting the driver statement cache)
+ * and binds the parameters, with no DSL allocation or rendering.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public final class DataTemplate
+{
+    @Getter
+    private final String name;
+
+    private final DataOrigin origin;
+    private final Function<DSLContext, Query> builder;
+
+    private volatile String sql;
+    private volatile int parameters;
+
+    /**
+     * Creates a template from plain SQL, with {@code ?} placeholders.
+     *
+     * @param origin The origin of the template.
+     * @param name   The name of the template.
+     * @param sql    The SQL of the template.
+     */
+    DataTemplate(@NonNull DataOrigin origin, @NonNull String name, @NonNull String sql)
+    {
+        this.origin = origin;
+        this.name = name;
+        this.builder = null;
+        this.sql = sql;
+        this.parameters = -1;
+    }
+
+    /**
+     * Creates a template from a jOOQ query. The bind values of the query are placeholders.
+     *
+     * @param origin  The origin of the template.
+     * @param name    The name of the template.
+     * @param builder Builds the query.
+     */
+    DataTemplate(@NonNull DataOrigin origin, @NonNull String name, @NonNull Function<DSLContext, Query> builder)
+    {
+        this.origin = origin;
+        this.name = name;
+        this.builder = builder;
+    }
+
+    /**
+     * Gets the SQL of the template, rendering it if needed.
+     *
+     * @return The SQL with positional placeholders.
+     */
+    public String getSql()
+    {
+        String rendered = sql;
+
+        if (rendered == null)
+        {
+            synchronized (this)
+            {
+                rendered = sql;
+
+                if (rendered == null)
+                {
+                    Query query = builder.apply(origin.getContext());
+
+                    parameters = query.getBindValues().size();
+                    sql = rendered = query.getSQL(ParamType.INDEXED);
+                }
+            }
+        }
+
+        return rendered;
+    }
+
+    /**
+     * Binds the parameters to a statement prepared from this template.
+     *
+     * @param statement The prepared statement.
+     * @param params    The parameters, in order.
+     * @throws SQLException If a parameter cannot be bound.
+     */
+    public void bind(@NonNull PreparedStatement statement, Object... params) throws SQLException
+    {
+        int expected = parameters;
+        checkArgument(expected < 0 || params.length == expected, Err.ARGS_NOT_SAME_SIZE.expect(name));
+
+        for (int i = 0; i < params.length; i++)
+        {
+            statement.setObject(i + 1, params[i]);
+        }
+    }
+
+    /**
+     * Executes the template as an update.
+     *
+     * @param connection The connection to use.
+     * @param params     The parameters, in order.
+     * @return The number of affected rows.
+     * @throws SQLException If the statement fails.
+     */
+    public int execute(@NonNull Connection connection, Object... params) throws SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement(getSql()))
+        {
+            bind(statement, params);
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Executes the template as a query, mapping every row.
+     *
+     * @param connection The connection to use.
+     * @param mapper     The mapper of the rows.
+     * @param params     The parameters, in order.
+     * @param <T>        The type of the mapped rows.
+     * @return The mapped rows.
+     * @throws SQLException If the query fails.
+     */
+    public <T> List<T> query(@NonNull Connection connection, @NonNull DataMapper<T> mapper, Object... params) throws
+                                                                                                             SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement(getSql()))
+        {
+            bind(statement, params);
+
+            try (ResultSet rows = statement.executeQuery())
+            {
+                List<T> result = new ArrayList<>();
+
+                while (rows.next())
+                {
+                    result.add(mapper.map(rows));
+                }
+
+                return result;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package xyz.sorridi.stone.common.data.base;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when an action is not run because the {@link CircuitBreaker} of its origin is open.
+ * It's never retried: the breaker already knows the database is down.
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public class DataUnavailableException extends SQLException
+{
+    public DataUnavailableException(String message)
+    {
+        super(message);
+    }
+
+    public DataUnavailableException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -1,13 +1,31 @@
 package xyz.sorridi.stone.common.data.base;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.NonNull;
 import xyz.sorridi.stone.common.data.base.op.DataAction;
+import xyz.sorridi.stone.common.data.base.op.DataBinder;
+import xyz.sorridi.stone.common.data.base.op.DataEntryBinder;
+import xyz.sorridi.stone.common.data.base.op.DataMapper;
 import xyz.sorridi.stone.common.data.base.op.DataResult;
 import xyz.sorridi.stone.common.threading.Pipeline;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * A worker class responsible for performing database actions through a pipeline.
@@ -22,9 +40,19 @@ public class DataWorker
 
     private final DataOrigin origin;
     private final Pipeline pipeline;
+    private final String name;
 
     private final boolean startupWorker;
 
+    private final DataMetrics metrics;
+
+    private DataBatcher batcher;
+    private DataCache cache;
+
+    private volatile DataPolicy policy = DataPolicy.NONE;
+
+    private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
+
     /**
      * Constructs a DataWorker with default configuration for 1 read and 1 write thread.
      *
@@ -72,7 +100,248 @@ public class DataWorker
     {
         this.origin = origin;
         this.startupWorker = startupWorker;
-        this.pipeline = new Pipeline("data-" + ID.getAndIncrement(), readThreads, writeThreads);
+        this.name = "data-" + ID.getAndIncrement();
+        this.pipeline = new Pipeline(name, readThreads, writeThreads);
+        this.metrics = new DataMetrics(name, origin);
+    }
+
+    /**
+     * Constructs a DataWorker running each action on its own virtual thread.
+     *
+     * @param origin  The data origin to interact with.
+     * @param permits The maximum number of actions running at the same time.
+     */
+    private DataWorker(DataOrigin origin, int permits)
+    {
+        this.origin = origin;
+        this.startupWorker = false;
+        this.name = "data-" + ID.getAndIncrement();
+        this.pipeline = new Pipeline(name, permits);
+        this.metrics = new DataMetrics(name, origin);
+    }
+
+    /**
+     * Creates a DataWorker running each action on its own virtual thread.
+     * The running actions are capped to the maximum pool size of the origin,
+     * so blocking calls never wait on a connection that the pool can't hand out.
+     *
+     * @param origin The data origin to interact with.
+     * @return The data worker.
+     */
+    public static DataWorker virtual(@NonNull DataOrigin origin)
+    {
+        return virtual(origin, origin.getMaximumPoolSize());
+    }
+
+    /**
+     * Creates a DataWorker running each action on its own virtual thread.
+     *
+     * @param origin  The data origin to interact with.
+     * @param permits The maximum number of actions running at the same time.
+     * @return The data worker.
+     */
+    public static DataWorker virtual(@NonNull DataOrigin origin, int permits)
+    {
+        return new DataWorker(origin, permits);
+    }
+
+    /**
+     * Enables the batched write mode.
+     * <p>
+     * Rows submitted through {@link #submitBatched(String, DataBinder, String...)} are queued and written
+     * as JDBC batches inside a single transaction, once {@code batchSize} rows are pending or
+     * once the first pending row has waited for {@code linger}.
+     * </p>
+     *
+     * @param batchSize The maximum number of rows per batch.
+     * @param linger    The maximum time a row waits before being flushed.
+     * @param unit      The time unit of the linger.
+     * @return The data worker (for method chaining).
+     */
+    public DataWorker setBatching(int batchSize, long linger, @NonNull TimeUnit unit)
+    {
+        if (batcher != null)
+        {
+            batcher.shutdown();
+        }
+
+        batcher = new DataBatcher(this, origin, pipeline.get(Pipeline.Types.WRITE), name, batchSize, linger, unit);
+        return this;
+    }
+
+    /**
+     * Sets the default policy of the actions submitted to this worker: deadline and retries.
+     * Actions submitted with a policy of their own ignore it.
+     *
+     * @param policy The default policy.
+     * @return The data worker (for method chaining).
+     */
+    public DataWorker setPolicy(@NonNull DataPolicy policy)
+    {
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * Creates a write-behind store flushing through this worker.
+     * <p>
+     * Values put in the store are coalesced per key, and written every {@code interval}
+     * with {@code sql} (usually an upsert), in batches of at most {@code batchSize} rows.
+     * The store is flushed when the origin shuts down, and every committed batch invalidates
+     * the cached entries of the affected queries.
+     * </p>
+     *
+     * @param sql         The upsert statement.
+     * @param binder      The binder of a key and its value.
+     * @param batchSize   The maximum number of rows per batch.
+     * @param interval    The time between two flushes.
+     * @param unit        The time unit of the interval.
+     * @param invalidates The names of the queries affected by the upserts.
+     * @param <K>         The type of the keys.
+     * @param <V>         The type of the values.
+     * @return The write-behind store.
+     */
+    public <K, V> WriteBehind<K, V> writeBehind(@NonNull String sql,
+                                                @NonNull DataEntryBinder<K, V> binder,
+                                                int batchSize,
+                                                long interval,
+                                                @NonNull TimeUnit unit,
+                                                String... invalidates)
+    {
+        return new WriteBehind<>(this, origin, pipeline.get(Pipeline.Types.WRITE), name, sql, binder, batchSize, interval, unit, invalidates);
+    }
+
+    /**
+     * Enables the read-through cache for the reads issued through {@link #read(String, DataResult, Object...)}.
+     * <p>
+     * Entries are keyed by query name and parameters, evicted by size and after {@code expireAfterWrite},
+     * and reloaded in the background when read after {@code refreshAfterWrite}. Writes submitted with
+     * the names of the queries they affect invalidate the matching entries.
+     * </p>
+     *
+     * @param maximumSize       The maximum number of entries.
+     * @param expireAfterWrite  The time after which an entry is evicted, {@code 0} to disable.
+     * @param refreshAfterWrite The time after which an entry is reloaded on read, {@code 0} to disable.
+     * @param unit              The time unit of the durations.
+     * @return The data worker (for method chaining).
+     */
+    public DataWorker setCache(long maximumSize, long expireAfterWrite, long refreshAfterWrite, @NonNull TimeUnit unit)
+    {
+        var previous = cache;
+
+        cache = new DataCache(this,
+                              pipeline.get(Pipeline.Types.READ),
+                              maximumSize,
+                              expireAfterWrite,
+                              refreshAfterWrite,
+                              unit);
+
+        if (previous != null)
+        {
+            previous.invalidateAll();
+        }
+
+        return this;
+    }
+
+    /**
+     * Reads a result through the cache, loading it on the read pipeline on a miss.
+     * If the cache is disabled, the action is submitted right away.
+     *
+     * @param query  The name of the query, used to invalidate its entries.
+     * @param action The action loading the result.
+     * @param params The parameters of the query, compared by value.
+     * @param <T>    The type of the result.
+     * @return A CompletableFuture containing the result wrapped in an Optional.
+     */
+    public <T> CompletableFuture<Optional<T>> read(@NonNull String query, @NonNull DataResult<T> action, Object... params)
+    {
+        if (cache == null)
+        {
+            return submit(action, Pipeline.Types.READ);
+        }
+
+        return cache.get(query, action, params);
+    }
+
+    /**
+     * Submits a data action and invalidates the cached entries of the given queries once it's done.
+     *
+     * @param action      The data action to execute.
+     * @param type        The type of pipeline to use (read or write).
+     * @param invalidates The names of the queries affected by the action.
+     * @return A CompletableFuture representing the execution of the action.
+     */
+    public CompletableFuture<Void> submit(@NonNull DataAction action, Pipeline.Types type, String... invalidates)
+    {
+        return submit(DataMetrics.UNNAMED, action, type, policy, invalidates);
+    }
+
+    /**
+     * Invalidates the cached entries of the given queries and notifies the invalidation listeners.
+     * The listeners are notified even if the cache is disabled, so a node that only writes still
+     * lets the other nodes know.
+     *
+     * @param queries The names of the queries.
+     */
+    public void invalidate(@NonNull String... queries)
+    {
+        if (cache != null)
+        {
+            cache.invalidate(queries);
+        }
+
+        for (var query : queries)
+        {
+            invalidationListeners.forEach(listener -> listener.accept(query));
+        }
+    }
+
+    /**
+     * Invalidates the cached entries of the given queries without notifying the invalidation listeners,
+     * e.g. when the invalidation comes from another node.
+     *
+     * @param queries The names of the queries.
+     */
+    public void invalidateLocally(@NonNull String... queries)
+    {
+        if (cache != null)
+        {
+            cache.invalidate(queries);
+        }
+    }
+
+    /**
+     * Adds a listener notified with the name of every query invalidated through this worker,
+     * whether or not the cache is enabled.
+     *
+     * @param listener The listener.
+     * @return The data worker (for method chaining).
+     */
+    public DataWorker onInvalidate(@NonNull Consumer<String> listener)
+    {
+        invalidationListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Gets the hit, miss, load and eviction statistics of the cache.
+     *
+     * @return A snapshot of the statistics, empty if the cache is disabled.
+     */
+    public CacheStats getCacheStats()
+    {
+        return cache != null ? cache.getStats() : CacheStats.empty();
+    }
+
+    /**
+     * Gets the approximate number of cached entries.
+     *
+     * @return The number of entries, {@code 0} if the cache is disabled.
+     */
+    public long getCacheSize()
+    {
+        return cache != null ? cache.getSize() : 0;
     }
 
     /**
@@ -86,76 +355,568 @@ public class DataWorker
      */
     public <T> CompletableFuture<Optional<T>> submit(DataResult<T> action, Pipeline.Types type)
     {
-        CompletableFuture<Optional<T>> future = new CompletableFuture<>();
+        return submit(DataMetrics.UNNAMED, action, type);
+    }
+
+    /**
+     * Submits a named data result action to the pipeline and returns a future result.
+     * The action is timed under its name in the {@link DataMetrics} of the worker.
+     *
+     * @param name   The name of the action.
+     * @param action The data result action to execute.
+     * @param type   The type of pipeline to use (read or write).
+     * @param <T>    The type of the result returned by the action.
+     * @return A CompletableFuture containing the result wrapped in an Optional.
+     */
+    public <T> CompletableFuture<Optional<T>> submit(@NonNull String name, DataResult<T> action, Pipeline.Types type)
+    {
+        return submit(name, action, type, policy);
+    }
+
+    /**
+     * Submits a named data result action to the pipeline, with its own policy.
+     *
+     * @param name   The name of the action.
+     * @param action The data result action to execute.
+     * @param type   The type of pipeline to use (read or write).
+     * @param policy The deadline and retries of the action.
+     * @param <T>    The type of the result returned by the action.
+     * @return A CompletableFuture containing the result wrapped in an Optional.
+     */
+    public <T> CompletableFuture<Optional<T>> submit(@NonNull String name,
+                                                     DataResult<T> action,
+                                                     Pipeline.Types type,
+                                                     @NonNull DataPolicy policy)
+    {
+        return run(name, connection -> Optional.ofNullable(action.run(connection, origin)), type, policy);
+    }
+
+    /**
+     * Submits a data action to the pipeline with no result and returns a future.
+     *
+     * @param action The data action to execute.
+     * @param type   The type of pipeline to use (read or write).
+     * @return A CompletableFuture representing the execution of the action.
+     */
+    public CompletableFuture<Void> submit(DataAction action, Pipeline.Types type)
+    {
+        return submit(DataMetrics.UNNAMED, action, type);
+    }
+
+    /**
+     * Submits a named data action to the pipeline with no result and returns a future.
+     * The action is timed under its name in the {@link DataMetrics} of the worker.
+     *
+     * @param name        The name of the action.
+     * @param action      The data action to execute.
+     * @param type        The type of pipeline to use (read or write).
+     * @param invalidates The names of the queries affected by the action.
+     * @return A CompletableFuture representing the execution of the action.
+     */
+    public CompletableFuture<Void> submit(@NonNull String name, DataAction action, Pipeline.Types type, String... invalidates)
+    {
+        return submit(name, action, type, policy, invalidates);
+    }
+
+    /**
+     * Submits a named data action to the pipeline with no result, with its own policy.
+     * The cached entries of the affected queries are invalidated once it's done.
+     *
+     * @param name        The name of the action.
+     * @param action      The data action to execute.
+     * @param type        The type of pipeline to use (read or write).
+     * @param policy      The deadline and retries of the action.
+     * @param invalidates The names of the queries affected by the action.
+     * @return A CompletableFuture representing the execution of the action.
+     */
+    public CompletableFuture<Void> submit(@NonNull String name,
+                                          DataAction action,
+                                          Pipeline.Types type,
+                                          @NonNull DataPolicy policy,
+                                          String... invalidates)
+    {
+        return this.<Void>run(name, connection ->
+                   {
+                       action.run(connection, origin);
+                       return null;
+                   }, type, policy)
+                   .whenComplete((ignored, e) ->
+                                 {
+                                     // An open breaker already says it all, don't flood the console
+                                     if (e != null && !(e instanceof DataUnavailableException))
+                                     {
+                                         e.printStackTrace();
+                                     }
+
+                                     invalidate(invalidates);
+                                 });
+    }
+
+    /**
+     * Submits a single row write.
+     * If the batched write mode is enabled, the row is queued and committed together with the
+     * other pending rows; otherwise, it is written right away on the write pipeline.
+     * The cached entries of the affected queries are invalidated once the row is written.
+     *
+     * @param sql         The SQL of the statement.
+     * @param binder      The binder of the row parameters.
+     * @param invalidates The names of the queries affected by the row.
+     * @return A CompletableFuture completed once the row has been committed.
+     */
+    public CompletableFuture<Void> submitBatched(@NonNull String sql, @NonNull DataBinder binder, String... invalidates)
+    {
+        if (batcher != null)
+        {
+            return batcher.add(sql, binder).whenComplete((ignored, e) -> invalidate(invalidates));
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
 
         CompletableFuture
                 .runAsync(() ->
                 {
                     waitUntilReady();
 
-                    try (Connection connection = origin.getConnection())
+                    try (Connection connection = origin.getConnection();
+                         PreparedStatement statement = connection.prepareStatement(sql))
                     {
-                        T result = action.run(connection, origin);
-                        future.complete(Optional.ofNullable(result));
+                        binder.bind(statement);
+                        statement.executeUpdate();
+                        future.complete(null);
                     }
                     catch (Exception e)
                     {
                         future.completeExceptionally(e);
                     }
-                }, pipeline.get(type));
+                }, pipeline.get(Pipeline.Types.WRITE));
 
-        return future;
+        return future.whenComplete((ignored, e) -> invalidate(invalidates));
     }
 
     /**
-     * Submits a data action to the pipeline with no result and returns a future.
+     * Submits a single row write from a registered template.
      *
-     * @param action The data action to execute.
-     * @param type   The type of pipeline to use (read or write).
-     * @return A CompletableFuture representing the execution of the action.
+     * @param template The name of the template.
+     * @param params   The parameters of the row, in order.
+     * @return A CompletableFuture completed once the row has been committed.
+     * @see #submitBatched(String, DataBinder, String...)
      */
-    public CompletableFuture<Void> submit(DataAction action, Pipeline.Types type)
+    public CompletableFuture<Void> submitTemplate(@NonNull String template, Object... params)
     {
-        CompletableFuture<Void> future = new CompletableFuture<>();
+        return submitTemplate(template, new String[0], params);
+    }
+
+    /**
+     * Submits a single row write from a registered template, invalidating the cached entries
+     * of the affected queries once the row is written.
+     *
+     * @param template    The name of the template.
+     * @param invalidates The names of the queries affected by the row.
+     * @param params      The parameters of the row, in order.
+     * @return A CompletableFuture completed once the row has been committed.
+     * @see #submitBatched(String, DataBinder, String...)
+     */
+    public CompletableFuture<Void> submitTemplate(@NonNull String template, @NonNull String[] invalidates, Object... params)
+    {
+        DataTemplate found = origin.getTemplate(template);
+        return submitBatched(found.getSql(), statement -> found.bind(statement, params), invalidates);
+    }
+
+    /**
+     * Executes a registered template as an update on the write pipeline.
+     *
+     * @param template The name of the template.
+     * @param params   The parameters, in order.
+     * @return A CompletableFuture containing the number of affected rows.
+     */
+    public CompletableFuture<Integer> execute(@NonNull String template, Object... params)
+    {
+        return execute(template, new String[0], params);
+    }
+
+    /**
+     * Executes a registered template as an update on the write pipeline, invalidating the cached
+     * entries of the affected queries once it's done.
+     *
+     * @param template    The name of the template.
+     * @param invalidates The names of the queries affected by the update.
+     * @param params      The parameters, in order.
+     * @return A CompletableFuture containing the number of affected rows.
+     */
+    public CompletableFuture<Integer> execute(@NonNull String template, @NonNull String[] invalidates, Object... params)
+    {
+        DataTemplate found = origin.getTemplate(template);
+        return run(template, connection -> found.execute(connection, params), Pipeline.Types.WRITE, policy)
+                .whenComplete((ignored, e) -> invalidate(invalidates));
+    }
+
+    /**
+     * Executes a registered template as a query on the read pipeline, mapping every row.
+     *
+     * @param template The name of the template.
+     * @param mapper   The mapper of the rows.
+     * @param params   The parameters, in order.
+     * @param <T>      The type of the mapped rows.
+     * @return A CompletableFuture containing the mapped rows.
+     */
+    public <T> CompletableFuture<List<T>> query(@NonNull String template, @NonNull DataMapper<T> mapper, Object... params)
+    {
+        DataTemplate found = origin.getTemplate(template);
+        return run(template, connection -> found.query(connection, mapper, params), Pipeline.Types.READ, policy);
+    }
+
+    /**
+     * Streams the rows of a query to a {@link Flow.Subscriber}, reading them only as they're requested.
+     * Each subscription runs the query on its own connection, released as soon as the stream ends
+     * or is cancelled.
+     *
+     * @param sql       The SQL of the query.
+     * @param binder    The binder of the query parameters.
+     * @param mapper    The mapper of the rows.
+     * @param fetchSize The number of rows fetched from the database at once.
+     * @param <T>       The type of the mapped rows.
+     * @return A publisher of the mapped rows.
+     */
+    public <T> Flow.Publisher<T> stream(@NonNull String sql,
+                                        @NonNull DataBinder binder,
+                                        @NonNull DataMapper<T> mapper,
+                                        int fetchSize)
+    {
+        return new DataStream<>(this, origin, pipeline.get(Pipeline.Types.READ), sql, binder, mapper, fetchSize);
+    }
+
+    /**
+     * Streams the rows of a query to a consumer, one at a time, on the read pipeline.
+     * Rows are never collected: only the fetched window is held in memory.
+     * The connection is released once the last row is consumed, or as soon as the query or the consumer fails.
+     *
+     * @param sql       The SQL of the query.
+     * @param binder    The binder of the query parameters.
+     * @param mapper    The mapper of the rows.
+     * @param fetchSize The number of rows fetched from the database at once.
+     * @param consumer  The consumer of the rows.
+     * @param <T>       The type of the mapped rows.
+     * @return A CompletableFuture containing the number of consumed rows.
+     */
+    public <T> CompletableFuture<Long> stream(@NonNull String sql,
+                                              @NonNull DataBinder binder,
+                                              @NonNull DataMapper<T> mapper,
+                                              int fetchSize,
+                                              @NonNull Consumer<? super T> consumer)
+    {
+        var stream = new DataStream<>(this, origin, pipeline.get(Pipeline.Types.READ), sql, binder, mapper, fetchSize);
+        CompletableFuture<Long> future = new CompletableFuture<>();
 
         CompletableFuture
                 .runAsync(() ->
                 {
                     waitUntilReady();
 
-                    try (Connection connection = origin.getConnection())
+                    Connection connection = null;
+                    ResultSet rows = null;
+                    Exception failure = null;
+                    long count = 0;
+
+                    try
                     {
-                        action.run(connection, origin);
-                        future.complete(null);
+                        connection = origin.getConnection(Pipeline.Types.READ);
+                        rows = stream.open(connection);
+
+                        while (rows.next())
+                        {
+                            consumer.accept(stream.map(rows));
+                            count++;
+                        }
                     }
                     catch (Exception e)
                     {
-                        e.printStackTrace();
-                        future.completeExceptionally(e);
+                        failure = e;
+                    }
+                    finally
+                    {
+                        if (connection != null)
+                        {
+                            DataStream.release(connection, rows);
+                        }
                     }
-                }, pipeline.get(type));
+
+                    // The connection is back in the pool by the time the caller is notified
+                    if (failure != null)
+                    {
+                        future.completeExceptionally(failure);
+                    }
+                    else
+                    {
+                        future.complete(count);
+                    }
+                }, pipeline.get(Pipeline.Types.READ));
 
         return future;
     }
 
+    /**
+     * Gets the number of rows waiting for the next batch.
+     *
+     * @return The number of pending rows, {@code 0} if the batched write mode is disabled.
+     */
+    public int getPendingBatched()
+    {
+        return batcher != null ? batcher.getPending() : 0;
+    }
+
     /**
      * Shuts down the pipeline, stopping all operations.
+     * Rows pending in the batched write mode are flushed first.
      */
     public void shutdown()
     {
+        if (batcher != null)
+        {
+            batcher.shutdown();
+        }
+
         pipeline.shutdown();
+        metrics.close();
+    }
+
+    /**
+     * Runs a statement on a pooled connection, on the given pipeline, timing it in the metrics.
+     * The policy bounds the statement with its deadline, the wait for a connection included, and retries it
+     * on transient failures. The circuit breaker of the origin, when enabled, fails it fast while the database
+     * is unreachable.
+     *
+     * @param name      The name of the action.
+     * @param statement The statement to run.
+     * @param type      The type of pipeline to use (read or write).
+     * @param policy    The deadline and retries of the action.
+     * @param <T>       The type of the result.
+     * @return A CompletableFuture containing the result.
+     */
+    private <T> CompletableFuture<T> run(String name, Statement<T> statement, Pipeline.Types type, DataPolicy policy)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queued = System.nanoTime();
+        long deadline = policy.getDeadline() > 0 ? queued + policy.getDeadline() : 0;
+
+        attempt(name, statement, type, policy, future, queued, deadline, 0, pipeline.get(type));
+        return future;
+    }
+
+    /**
+     * Runs an attempt of a statement, scheduling the next one on a transient failure.
+     *
+     * @param name      The name of the action.
+     * @param statement The statement to run.
+     * @param type      The type of pipeline to use (read or write).
+     * @param policy    The deadline and retries of the action.
+     * @param future    The future of the action.
+     * @param queued    When the attempt was queued, in nanoseconds.
+     * @param deadline  When the deadline of the action elapses, in nanoseconds, {@code 0} if it has none.
+     * @param attempt   The number of attempts already made.
+     * @param executor  The executor running the attempt.
+     * @param <T>       The type of the result.
+     */
+    private <T> void attempt(String name,
+                             Statement<T> statement,
+                             Pipeline.Types type,
+                             DataPolicy policy,
+                             CompletableFuture<T> future,
+                             long queued,
+                             long deadline,
+                             int attempt,
+                             Executor executor)
+    {
+        CircuitBreaker breaker = origin.getBreaker();
+        boolean guarded = policy.isCircuitBreaker() || origin.isBreakerEnabled();
+
+        CompletableFuture
+                .runAsync(() ->
+                {
+                    long started = System.nanoTime();
+                    long acquired = started;
+                    boolean allowed = false;
+
+                    try
+                    {
+                        waitUntilReady(deadline);
+                        checkDeadline(deadline, "queued");
+
+                        if (guarded && !breaker.allow())
+                        {
+                            throw new DataUnavailableException("The circuit breaker of the origin is open");
+                        }
+
+                        allowed = guarded;
+                        started = System.nanoTime();
+                        acquired = started;
+
+                        Semaphore permits = origin.getConnectionPermits();
+                        acquirePermit(permits, deadline);
+
+                        try (Connection connection = origin.getConnection(type))
+                        {
+                            acquired = System.nanoTime();
+                            checkDeadline(deadline, "waiting for a connection");
+
+                            if (deadline != 0)
+                            {
+                                // Cuts a statement still running at the deadline, reset by the pool on release
+                                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - acquired);
+                                connection.setNetworkTimeout(Runnable::run, (int) Math.clamp(remaining, 1, Integer.MAX_VALUE));
+                            }
+
+                            T result = statement.run(connection);
+
+                            if (guarded)
+                            {
+                                breaker.success();
+                            }
+
+                            metrics.record(name, type, started - queued, acquired - started, System.nanoTime() - acquired, true);
+                            future.complete(result);
+                        }
+                        finally
+                        {
+                            permits.release();
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        boolean transientFailure = DataPolicy.isTransient(e);
+
+                        if (allowed)
+                        {
+                            // Only an unreachable database opens the breaker, not slow queries or deadlocks
+                            if (DataPolicy.isConnectivity(e))
+                            {
+                                breaker.failure();
+                            }
+                            else
+                            {
+                                breaker.success();
+                            }
+                        }
+
+                        long failed = System.nanoTime();
+
+                        if (transientFailure && attempt < policy.getRetries())
+                        {
+                            long backoff = policy.backoff(attempt + 1);
+
+                            if (deadline == 0 || failed + backoff - deadline < 0)
+                            {
+                                metrics.retried(name, type, started - queued, acquired - started, failed - acquired);
+
+                                // The next attempt is queued on the pipeline once the backoff elapses
+                                var delayed = CompletableFuture.delayedExecutor(backoff, TimeUnit.NANOSECONDS, pipeline.get(type));
+                                attempt(name, statement, type, policy, future, failed + backoff, deadline, attempt + 1, delayed);
+                                return;
+                            }
+                        }
+
+                        metrics.record(name, type, started - queued, acquired - started, failed - acquired, false);
+                        future.completeExceptionally(e);
+                    }
+                }, executor);
+    }
+
+    /**
+     * Waits for the data origin to be ready, at most until the deadline.
+     *
+     * @param deadline When the deadline elapses, in nanoseconds, {@code 0} to wait indefinitely.
+     * @throws SQLTimeoutException       If the origin is not ready by the deadline.
+     * @throws DataUnavailableException  If the origin failed to come up.
+     * @throws InterruptedException      If the thread is interrupted while waiting.
+     */
+    private void waitUntilReady(long deadline) throws SQLException, InterruptedException
+    {
+        if (deadline == 0 || startupWorker || origin.isReady())
+        {
+            waitUntilReady();
+            return;
+        }
+
+        try
+        {
+            origin.whenReady().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            throw new SQLTimeoutException("Deadline elapsed while waiting for the origin", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new DataUnavailableException("The origin failed to come up", e.getCause());
+        }
+    }
+
+    /**
+     * Takes a connection permit of the origin, at most until the deadline.
+     *
+     * @param permits  The connection permits of the origin.
+     * @param deadline When the deadline elapses, in nanoseconds, {@code 0} to wait indefinitely.
+     * @throws SQLTimeoutException  If no connection is free by the deadline.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    private static void acquirePermit(Semaphore permits, long deadline) throws SQLTimeoutException, InterruptedException
+    {
+        if (deadline == 0)
+        {
+            permits.acquire();
+            return;
+        }
+
+        if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+        {
+            throw new SQLTimeoutException("Deadline elapsed while waiting for a connection");
+        }
+    }
+
+    /**
+     * Fails an action past its deadline.
+     *
+     * @param deadline When the deadline elapses, in nanoseconds, {@code 0} if there is none.
+     * @param phase    What the action was doing.
+     * @throws SQLTimeoutException If the deadline elapsed.
+     */
+    private static void checkDeadline(long deadline, String phase) throws SQLTimeoutException
+    {
+        if (deadline != 0 && System.nanoTime() - deadline >= 0)
+        {
+            throw new SQLTimeoutException("Deadline elapsed while " + phase);
+        }
+    }
+
+    /**
+     * Gets the latency and failure metrics of the actions run by this worker.
+     *
+     * @return The metrics.
+     */
+    public DataMetrics getMetrics()
+    {
+        return metrics;
     }
 
     /**
      * Waits for the data origin to be ready before proceeding.
      * If the worker is not set to start up immediately, it waits until the origin signals readiness.
      */
-    private void waitUntilReady()
+    void waitUntilReady()
     {
-        if (!startupWorker && !origin.isReady())
+        if (!startupWorker)
         {
             origin.waitUntilReady();
         }
     }
 
+    /**
+     * A statement run on a pooled connection.
+     *
+     * @param <T> The type of the result.
+     */
+    private interface Statement<T>
+    {
+        T run(Connection connection) throws SQLException;
+    }
+
 }
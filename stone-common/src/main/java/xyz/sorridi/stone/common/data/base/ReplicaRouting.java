@@ -0,0 +1,18 @@
+package xyz.sorridi.stone.common.data.base;
+
+/**
+ * How a {@link DataOrigin} picks the replica serving a read.
+ * <br>
+ * <ul>
+ * <li>{@link ReplicaRouting#ROUND_ROBIN}: Replicas take turns.</li>
+ * <li>{@link ReplicaRouting#LEAST_LOADED}: The replica with the fewest active and waiting connections.</li>
+ * </ul>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public enum ReplicaRouting
+{
+    ROUND_ROBIN,
+    LEAST_LOADED
+}
@@ -0,0 +1,394 @@
+package xyz.sorridi.stone.common.data.base;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.NonNull;
+import xyz.sorridi.stone.common.data.base.op.DataEntryBinder;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Write-behind store for hot, frequently mutated state.
+ * <p>
+ * Values are kept in a dirty map keyed by entity, where a newer value simply replaces the older one,
+ * and the map is flushed periodically as batched upserts in one transaction per batch. A key changed
+ * any number of times between two flushes costs a single row write. If a flush fails, its entries
+ * are put back unless a newer value arrived in the meantime, and retried with the next flush.
+ * </p>
+ * <p>
+ * Only one flush runs at a time, whether periodic, requested through {@link #flush()} or run by
+ * {@link #close()}, so batches always commit in the order their values were put: an older value
+ * can never overwrite a newer row.
+ * </p>
+ * <p>
+ * Stores are flushed synchronously by {@link DataOrigin#shutdown()} before the pool is closed.
+ * Created through {@link DataWorker#writeBehind(String, DataEntryBinder, int, long, TimeUnit, String...)}.
+ * </p>
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @author atom7xyz
+ * @since 1.0
+ */
+public class WriteBehind<K, V> implements AutoCloseable
+{
+    private final DataWorker worker;
+    private final DataOrigin origin;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+
+    private final String sql;
+    private final DataEntryBinder<K, V> binder;
+    private final int batchSize;
+    private final String[] invalidates;
+
+    private final ConcurrentHashMap<K, Pending<V>> dirty;
+    private final AtomicLong sequence;
+    private final ReentrantLock flushing;
+    private final LongAdder puts, written, failed;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new write-behind store and registers it with its origin.
+     *
+     * @param worker      The worker owning the store.
+     * @param origin      The data origin to write to.
+     * @param executor    The executor running the flushes.
+     * @param name        The name of the store, used for its timer thread.
+     * @param sql         The upsert statement.
+     * @param binder      The binder of a key and its value.
+     * @param batchSize   The maximum number of rows per batch.
+     * @param interval    The time between two flushes.
+     * @param unit        The time unit of the interval.
+     * @param invalidates The names of the queries affected by the upserts.
+     */
+    WriteBehind(@NonNull DataWorker worker,
+                @NonNull DataOrigin origin,
+                @NonNull Executor executor,
+                @NonNull String name,
+                @NonNull String sql,
+                @NonNull DataEntryBinder<K, V> binder,
+                int batchSize,
+                long interval,
+                @NonNull TimeUnit unit,
+                @NonNull String[] invalidates)
+    {
+        checkArgument(batchSize > 0, Err.MUST_BE_POSITIVE.expect("batchSize"));
+        checkArgument(interval > 0, Err.MUST_BE_POSITIVE.expect("interval"));
+
+        this.worker = worker;
+        this.origin = origin;
+        this.executor = executor;
+        this.sql = sql;
+        this.binder = binder;
+        this.batchSize = batchSize;
+        this.invalidates = invalidates.clone();
+        this.dirty = new ConcurrentHashMap<>();
+        this.sequence = new AtomicLong();
+        this.flushing = new ReentrantLock();
+        this.puts = new LongAdder();
+        this.written = new LongAdder();
+        this.failed = new LongAdder();
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                                                                        .setNameFormat("write-behind-" + name + " (#%d)")
+                                                                        .setDaemon(true)
+                                                                        .build());
+
+        this.timer.scheduleWithFixedDelay(this::flushAsync, interval, interval, unit);
+        origin.register(this);
+    }
+
+    /**
+     * Sets the latest value of a key, replacing the one pending if any.
+     *
+     * @param key   The key.
+     * @param value The value to persist.
+     */
+    public void put(@NonNull K key, @NonNull V value)
+    {
+        if (closed)
+        {
+            throw new RejectedExecutionException("The write-behind store has been closed");
+        }
+
+        dirty.put(key, new Pending<>(value, sequence.incrementAndGet()));
+        puts.increment();
+    }
+
+    /**
+     * Gets the value of a key waiting to be flushed.
+     *
+     * @param key The key.
+     * @return The pending value, {@code null} if the key is not dirty.
+     */
+    public V getPending(@NonNull K key)
+    {
+        var pending = dirty.get(key);
+        return pending != null ? pending.value() : null;
+    }
+
+    /**
+     * Gets the number of keys waiting to be flushed.
+     *
+     * @return The number of dirty keys.
+     */
+    public int getPending()
+    {
+        return dirty.size();
+    }
+
+    /**
+     * Gets the number of values put in the store.
+     *
+     * @return The number of puts.
+     */
+    public long getPuts()
+    {
+        return puts.sum();
+    }
+
+    /**
+     * Gets the number of rows written to the database.
+     * Compared to {@link #getPuts()}, shows how many writes were coalesced.
+     *
+     * @return The number of written rows.
+     */
+    public long getWritten()
+    {
+        return written.sum();
+    }
+
+    /**
+     * Gets the number of rows whose flush failed and were put back.
+     *
+     * @return The number of failed rows.
+     */
+    public long getFailed()
+    {
+        return failed.sum();
+    }
+
+    /**
+     * Flushes the dirty keys on the write pipeline of the worker, after the flush running if any.
+     *
+     * @return A CompletableFuture completed once every flushed batch is committed or put back.
+     */
+    public CompletableFuture<Void> flush()
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        try
+        {
+            executor.execute(() ->
+                             {
+                                 try
+                                 {
+                                     worker.waitUntilReady();
+                                     flushLocked();
+                                     future.complete(null);
+                                 }
+                                 catch (RuntimeException e)
+                                 {
+                                     future.completeExceptionally(e);
+                                 }
+                             });
+        }
+        catch (RejectedExecutionException e)
+        {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Stops the periodic flushes and writes the dirty keys on the calling thread.
+     * Values put afterwards are rejected.
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        closed = true;
+        timer.shutdownNow();
+
+        // Waits for a flush still running on the pipeline
+        flushLocked();
+        origin.unregister(this);
+    }
+
+    /**
+     * Queues a periodic flush, skipped while the origin is not ready or a flush is still running.
+     */
+    private void flushAsync()
+    {
+        if (dirty.isEmpty() || origin.isNotReady() || flushing.isLocked())
+        {
+            return;
+        }
+
+        try
+        {
+            executor.execute(() ->
+                             {
+                                 // A flush requested in the meantime already took the keys
+                                 if (flushing.tryLock())
+                                 {
+                                     try
+                                     {
+                                         flushNow();
+                                     }
+                                     finally
+                                     {
+                                         flushing.unlock();
+                                     }
+                                 }
+                             });
+        }
+        catch (RejectedExecutionException ignored)
+        {
+            // The pipeline is shutting down, close() flushes what is left
+        }
+    }
+
+    /**
+     * Writes every dirty key on the calling thread, once the flush running if any is done.
+     */
+    private void flushLocked()
+    {
+        flushing.lock();
+
+        try
+        {
+            flushNow();
+        }
+        finally
+        {
+            flushing.unlock();
+        }
+    }
+
+    /**
+     * Writes every dirty key, one transaction per batch, on the calling thread.
+     * Must hold the flush lock.
+     */
+    private void flushNow()
+    {
+        List<Map.Entry<K, Pending<V>>> batch = new ArrayList<>(Math.min(batchSize, dirty.size()));
+
+        // Keys put back by a failed batch wait for the next flush
+        for (K key : new ArrayList<>(dirty.keySet()))
+        {
+            Pending<V> value = dirty.remove(key);
+
+            if (value == null)
+            {
+                continue;
+            }
+
+            batch.add(Map.entry(key, value));
+
+            if (batch.size() == batchSize)
+            {
+                write(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty())
+        {
+            write(batch);
+        }
+    }
+
+    /**
+     * Writes a batch in a single transaction, putting its entries back if it fails.
+     * Once committed, the cached entries of the affected queries are invalidated.
+     *
+     * @param batch The entries to write.
+     */
+    private void write(List<Map.Entry<K, Pending<V>>> batch)
+    {
+        try (Connection connection = origin.getConnection())
+        {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement statement = connection.prepareStatement(sql))
+            {
+                for (var entry : batch)
+                {
+                    binder.bind(statement, entry.getKey(), entry.getValue().value());
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+                connection.commit();
+                written.add(batch.size());
+            }
+            catch (SQLException | RuntimeException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        catch (SQLException | RuntimeException e)
+        {
+            failed.add(batch.size());
+
+            // A value put since the flush started has a higher sequence, it wins over the failed one
+            for (var entry : batch)
+            {
+                var failedValue = entry.getValue();
+                dirty.merge(entry.getKey(), failedValue, (current, old) -> current.sequence() > old.sequence() ? current : old);
+            }
+
+            if (origin.getLogger() != null)
+            {
+                origin.getLogger().exception("Error flushing " + batch.size() + " write-behind rows", e);
+            }
+
+            return;
+        }
+
+        worker.invalidate(invalidates);
+    }
+
+    /**
+     * A value waiting to be flushed, with the sequence of the put that set it.
+     *
+     * @param value    The value.
+     * @param sequence The sequence of the put, increasing across the store.
+     * @param <V>      The type of the value.
+     */
+    private record Pending<V>(V value, long sequence)
+    {
+    }
+
+}
@@ -1,19 +1,72 @@
 package xyz.sorridi.stone.common.data.base.hibernate;
 
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import lombok.NonNull;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.service.ServiceRegistry;
+import org.hibernate.stat.Statistics;
 import xyz.sorridi.stone.common.data.base.DataOrigin;
+import xyz.sorridi.stone.common.immutable.Err;
+import xyz.sorridi.stone.common.threading.Pool;
 
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link DataOrigin} backing a Hibernate {@link SessionFactory}.
+ * <p>
+ * Defaults are tuned for entity-heavy plugins: JDBC batching with ordered inserts and updates,
+ * and batch fetching of lazy associations to avoid N+1 selects. A second-level cache backed by
+ * Caffeine through JCache can be enabled, with bounded regions configured per entity or collection.
+ * </p>
+ * <p>
+ * Each config owns its session factory, so several persistence units can run side by side, each on
+ * its own database. The factory is built off-thread once the origin is ready, and the factories of
+ * different configs are built in parallel.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
 public class HibernateConfig extends DataOrigin
 {
-    private static SessionFactory sessionFactory;
+    // Runs the bootstraps of every config, each on its own virtual thread
+    private static final Pool BOOTSTRAP = new Pool("hibernate_bootstrap", new Semaphore(Runtime.getRuntime().availableProcessors()));
+
+    private volatile SessionFactory sessionFactory;
+    private final CompletableFuture<SessionFactory> factoryFuture = new CompletableFuture<>();
+    private volatile SessionProvider sessionProvider;
+
+    private final List<Class<?>> annotatedClasses = new ArrayList<>();
+    private final int id = ID.getAndIncrement();
 
     private String hibernateHbm2ddlAuto, hibernateShowSql;
 
+    private int batchSize = 50;
+    private int fetchBatchSize = 16;
+    private boolean orderInserts = true, orderUpdates = true;
+    private boolean statistics;
+
+    private boolean secondLevelCache, queryCache;
+    private final Map<String, CaffeineConfiguration<Object, Object>> cacheRegions = new LinkedHashMap<>();
+    private CacheManager cacheManager;
+
     public HibernateConfig setHibernateHbm2ddlAuto(String hibernateHbm2ddlAuto)
     {
         this.hibernateHbm2ddlAuto = hibernateHbm2ddlAuto;
@@ -26,33 +79,289 @@ public class HibernateConfig extends DataOrigin
         return this;
     }
 
+    /**
+     * Adds entity classes to the persistence unit of this config.
+     *
+     * @param classes The annotated entity classes.
+     * @return The hibernate config.
+     */
+    public HibernateConfig addAnnotatedClass(@NonNull Class<?>... classes)
+    {
+        Collections.addAll(annotatedClasses, classes);
+        return this;
+    }
+
+    /**
+     * Sets the number of statements sent to the database in a single JDBC batch.
+     *
+     * @param batchSize The JDBC batch size, {@code 0} to disable batching.
+     * @return The hibernate config.
+     */
+    public HibernateConfig setBatchSize(int batchSize)
+    {
+        checkArgument(batchSize >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("batchSize"));
+
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the number of lazy entities or collections initialized by a single select.
+     *
+     * @param fetchBatchSize The default batch fetch size, {@code 0} to disable.
+     * @return The hibernate config.
+     */
+    public HibernateConfig setFetchBatchSize(int fetchBatchSize)
+    {
+        checkArgument(fetchBatchSize >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("fetchBatchSize"));
+
+        this.fetchBatchSize = fetchBatchSize;
+        return this;
+    }
+
+    /**
+     * Sets whether inserts and updates are ordered by entity, so they can share JDBC batches.
+     *
+     * @param orderInserts Whether to order the inserts.
+     * @param orderUpdates Whether to order the updates.
+     * @return The hibernate config.
+     */
+    public HibernateConfig setOrdering(boolean orderInserts, boolean orderUpdates)
+    {
+        this.orderInserts = orderInserts;
+        this.orderUpdates = orderUpdates;
+        return this;
+    }
+
+    /**
+     * Sets whether Hibernate collects statistics, reachable with {@link #getStatistics()}.
+     *
+     * @param statistics Whether to collect statistics.
+     * @return The hibernate config.
+     */
+    public HibernateConfig setStatistics(boolean statistics)
+    {
+        this.statistics = statistics;
+        return this;
+    }
+
+    /**
+     * Enables the second-level cache, backed by Caffeine through JCache.
+     * Regions not configured with {@link #setCacheRegion(String, long, long, TimeUnit)} are created
+     * with the defaults of the provider.
+     *
+     * @param queryCache Whether to cache query results too.
+     * @return The hibernate config.
+     */
+    public HibernateConfig setSecondLevelCache(boolean queryCache)
+    {
+        this.secondLevelCache = true;
+        this.queryCache = queryCache;
+        return this;
+    }
+
+    /**
+     * Configures a second-level cache region.
+     *
+     * @param region           The name of the region, by default the name of the entity class or collection role.
+     * @param maximumSize      The maximum number of entries.
+     * @param expireAfterWrite The time after which an entry is evicted, {@code 0} to disable.
+     * @param unit             The time unit of the expiration.
+     * @return The hibernate config.
+     */
+    public HibernateConfig setCacheRegion(@NonNull String region, long maximumSize, long expireAfterWrite, @NonNull TimeUnit unit)
+    {
+        checkArgument(maximumSize > 0, Err.MUST_BE_POSITIVE.expect("maximumSize"));
+        checkArgument(expireAfterWrite >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("expireAfterWrite"));
+
+        var configuration = new CaffeineConfiguration<>()
+                .setMaximumSize(OptionalLong.of(maximumSize))
+                .setExpireAfterWrite(expireAfterWrite > 0 ? OptionalLong.of(unit.toNanos(expireAfterWrite)) : OptionalLong.empty());
+
+        cacheRegions.put(region, configuration);
+        return this;
+    }
+
+    /**
+     * Sets up the origin. The session factory is built once the origin is ready,
+     * without blocking the caller: chain on {@link #getSessionFactoryAsync()} to use it.
+     */
     @Override
     public void setup()
     {
         super.setup();
 
-        Configuration configuration = new Configuration();
-        configuration.setProperty("hibernate.hbm2ddl.auto", hibernateHbm2ddlAuto);
-        configuration.setProperty("hibernate.show_sql", hibernateShowSql);
+        whenReady().whenCompleteAsync((ignored, failure) ->
+                                      {
+                                          if (failure != null)
+                                          {
+                                              // The origin failed to come up, so does the factory
+                                              factoryFuture.completeExceptionally(failure);
+                                              return;
+                                          }
 
-        ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
-                .applySetting("hibernate.connection.datasource", dataSource)
-                .applySettings(configuration.getProperties())
-                .build();
+                                          try
+                                          {
+                                              sessionFactory = buildSessionFactory();
+                                              factoryFuture.complete(sessionFactory);
+                                          }
+                                          catch (RuntimeException e)
+                                          {
+                                              factoryFuture.completeExceptionally(e);
+
+                                              if (getLogger() != null)
+                                              {
+                                                  getLogger().exception("Failed to build the session factory", e);
+                                              }
+                                          }
+                                      },
+                                      BOOTSTRAP);
+    }
+
+    /**
+     * Gets the session factory of this config.
+     *
+     * @return The session factory, empty if it's not built yet.
+     */
+    public Optional<SessionFactory> getSessionFactory()
+    {
+        return Optional.ofNullable(sessionFactory);
+    }
+
+    /**
+     * Gets a future completed with the session factory once it's built.
+     * Can be called before {@link #setup()}, the same future is completed by it.
+     *
+     * @return The session factory future.
+     */
+    public CompletableFuture<SessionFactory> getSessionFactoryAsync()
+    {
+        return factoryFuture;
+    }
+
+    /**
+     * Gets the session provider of this config, created on first use.
+     * Blocks until the session factory is built, without holding the config meanwhile.
+     *
+     * @return The session provider.
+     */
+    public SessionProvider getSessionProvider()
+    {
+        var provider = sessionProvider;
+
+        if (provider != null)
+        {
+            return provider;
+        }
+
+        var factory = factoryFuture.join();
+
+        synchronized (this)
+        {
+            provider = sessionProvider;
+
+            if (provider == null)
+            {
+                provider = new SessionProvider(factory, batchSize);
+                sessionProvider = provider;
+            }
+        }
 
-        sessionFactory = configuration.buildSessionFactory(serviceRegistry);
+        return provider;
     }
 
-    public static Optional<SessionFactory> getSessionFactory()
+    /**
+     * Gets the statistics of the session factory: queries, fetches, batches and cache hits.
+     *
+     * @return The statistics, empty if the factory is not built or statistics are disabled.
+     */
+    public Optional<Statistics> getStatistics()
     {
-        return Optional.of(sessionFactory);
+        return statistics ? getSessionFactory().map(SessionFactory::getStatistics) : Optional.empty();
     }
 
     @Override
     public void shutdown()
     {
-        super.shutdown();
+        if (sessionProvider != null)
+        {
+            sessionProvider.close();
+            sessionProvider = null;
+        }
+
         getSessionFactory().ifPresent(SessionFactory::close);
+        sessionFactory = null;
+
+        super.shutdown();
+
+        if (cacheManager != null)
+        {
+            cacheManager.close();
+        }
+    }
+
+    /**
+     * Builds the session factory on the connection pool of the origin.
+     *
+     * @return The session factory.
+     */
+    private SessionFactory buildSessionFactory()
+    {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.hbm2ddl.auto", hibernateHbm2ddlAuto);
+        configuration.setProperty("hibernate.show_sql", hibernateShowSql);
+
+        configuration.setProperty("hibernate.jdbc.batch_size", String.valueOf(batchSize));
+        configuration.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+        configuration.setProperty("hibernate.order_inserts", String.valueOf(orderInserts));
+        configuration.setProperty("hibernate.order_updates", String.valueOf(orderUpdates));
+        configuration.setProperty("hibernate.default_batch_fetch_size", String.valueOf(fetchBatchSize));
+        configuration.setProperty("hibernate.generate_statistics", String.valueOf(statistics));
+
+        configuration.setProperty("hibernate.cache.use_second_level_cache", String.valueOf(secondLevelCache));
+        configuration.setProperty("hibernate.cache.use_query_cache", String.valueOf(secondLevelCache && queryCache));
+
+        annotatedClasses.forEach(configuration::addAnnotatedClass);
+
+        var registry = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.connection.datasource", dataSource)
+                .applySettings(configuration.getProperties());
+
+        if (secondLevelCache)
+        {
+            cacheManager = createCacheManager();
+
+            registry.applySetting("hibernate.cache.region.factory_class", "jcache")
+                    .applySetting("hibernate.javax.cache.cache_manager", cacheManager)
+                    .applySetting("hibernate.javax.cache.missing_cache_strategy", "create");
+        }
+
+        ServiceRegistry serviceRegistry = registry.build();
+
+        return configuration.buildSessionFactory(serviceRegistry);
+    }
+
+    /**
+     * Creates the JCache manager of the second-level cache, with the configured regions.
+     *
+     * @return The cache manager.
+     */
+    private CacheManager createCacheManager()
+    {
+        var classLoader = getClass().getClassLoader();
+        var provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName(), classLoader);
+        // A manager of its own, so the regions of different configs never collide
+        var manager = provider.getCacheManager(URI.create("stone-hibernate-" + id), classLoader);
+
+        cacheRegions.forEach((region, configuration) ->
+                             {
+                                 if (manager.getCache(region) == null)
+                                 {
+                                     manager.createCache(region, configuration.setStatisticsEnabled(statistics));
+                                 }
+                             });
+
+        return manager;
     }
 
-}
\ No newline at end of file
+}
@@ -1,17 +1,242 @@
 package xyz.sorridi.stone.common.data.base.hibernate;
 
 
-import lombok.AllArgsConstructor;
+import lombok.NonNull;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 
-@AllArgsConstructor
-public class SessionProvider
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Hands out the sessions of a {@link SessionFactory}.
+ * <p>
+ * Each unit of work runs in a session of its own, bound to its thread while it runs and closed once it
+ * ends, so the persistence context never outlives it, a session that failed is never reused, and threads
+ * that come and go (e.g. virtual ones) leave nothing behind. Nested units of work join the session
+ * and transaction of the outer one.
+ * </p>
+ * <p>
+ * Sessions are not thread-safe, so closing the provider never closes the sessions of other threads:
+ * it only rejects new units of work, and the running ones close their own session as they end.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public class SessionProvider implements AutoCloseable
 {
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
     private final SessionFactory factory;
+    private final int batchSize;
+
+    private final ThreadLocal<Session> sessions = new ThreadLocal<>();
+
+    private volatile boolean closed;
+
+    public SessionProvider(SessionFactory factory)
+    {
+        this(factory, DEFAULT_BATCH_SIZE);
+    }
 
+    /**
+     * Creates a session provider.
+     *
+     * @param factory   The session factory.
+     * @param batchSize The JDBC batch size of the stateless sessions.
+     */
+    public SessionProvider(SessionFactory factory, int batchSize)
+    {
+        this.factory = factory;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Opens a new session, to be closed by the caller.
+     *
+     * @return The session.
+     * @throws IllegalStateException If the provider is closed.
+     */
     public Session getSession()
     {
+        checkOpen();
         return factory.openSession();
     }
+
+    /**
+     * Gets the session of the unit of work running on the current thread.
+     * It must not be closed by the caller nor handed to other threads.
+     *
+     * @return The session of the current unit of work.
+     * @throws IllegalStateException If no unit of work runs on the current thread.
+     */
+    public Session getThreadSession()
+    {
+        Session session = sessions.get();
+
+        if (session == null)
+        {
+            throw new IllegalStateException("No unit of work runs on this thread, use inSession()");
+        }
+
+        return session;
+    }
+
+    /**
+     * Runs a unit of work in a transaction, on a session opened for it and closed once it ends.
+     * The transaction is rolled back if the work fails. Called from within another unit of work,
+     * the work joins its session and transaction instead.
+     *
+     * @param work The work to run.
+     * @param <R>  The type of the result.
+     * @return The result of the work.
+     * @throws IllegalStateException If the provider is closed.
+     */
+    public <R> R inSession(@NonNull Function<Session, R> work)
+    {
+        Session outer = sessions.get();
+
+        if (outer != null)
+        {
+            // Nested unit of work, joins the outer transaction
+            return work.apply(outer);
+        }
+
+        checkOpen();
+
+        Session session = factory.openSession();
+        sessions.set(session);
+
+        try
+        {
+            var transaction = session.beginTransaction();
+
+            try
+            {
+                R result = work.apply(session);
+                transaction.commit();
+                return result;
+            }
+            catch (RuntimeException e)
+            {
+                if (transaction.isActive())
+                {
+                    transaction.rollback();
+                }
+
+                throw e;
+            }
+        }
+        finally
+        {
+            // Also discards a session left inconsistent by a failure, as Hibernate requires
+            sessions.remove();
+
+            // Already closed if the factory was closed meanwhile
+            if (session.isOpen())
+            {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Opens a stateless session, for bulk work: no persistence context, no dirty checking,
+     * no cascades and no second-level cache, with statements sent in JDBC batches.
+     *
+     * @return The stateless session, to be closed by the caller.
+     * @throws IllegalStateException If the provider is closed.
+     */
+    public StatelessSession getStatelessSession()
+    {
+        checkOpen();
+
+        StatelessSession session = factory.openStatelessSession();
+        session.setJdbcBatchSize(batchSize);
+        return session;
+    }
+
+    /**
+     * Runs bulk work in a stateless session, inside a transaction rolled back if the work fails.
+     *
+     * @param work The work to run.
+     */
+    public void bulk(@NonNull Consumer<StatelessSession> work)
+    {
+        try (StatelessSession session = getStatelessSession())
+        {
+            var transaction = session.beginTransaction();
+
+            try
+            {
+                work.accept(session);
+                transaction.commit();
+            }
+            catch (RuntimeException e)
+            {
+                if (transaction.isActive())
+                {
+                    transaction.rollback();
+                }
+
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Inserts entities in JDBC batches, in a single transaction.
+     *
+     * @param entities The entities to insert.
+     */
+    public void insertAll(@NonNull Collection<?> entities)
+    {
+        bulk(session -> entities.forEach(session::insert));
+    }
+
+    /**
+     * Inserts or updates entities in JDBC batches, in a single transaction.
+     *
+     * @param entities The entities to upsert.
+     */
+    public void upsertAll(@NonNull Collection<?> entities)
+    {
+        bulk(session -> entities.forEach(session::upsert));
+    }
+
+    /**
+     * Closes the provider, e.g. on shutdown: new units of work are rejected, while the running
+     * ones end on their own thread and close their session there.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+    }
+
+    /**
+     * Checks whether the provider is closed.
+     *
+     * @return If the provider is closed.
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * Fails if the provider is closed.
+     *
+     * @throws IllegalStateException If the provider is closed.
+     */
+    private void checkOpen()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("The session provider has been closed");
+        }
+    }
 }
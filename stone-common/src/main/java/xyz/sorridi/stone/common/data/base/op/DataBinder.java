@@ -0,0 +1,17 @@
+package xyz.sorridi.stone.common.data.base.op;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binds the parameters of a single row to a prepared statement.
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public interface DataBinder
+{
+    void bind(@NotNull PreparedStatement statement) throws SQLException;
+}
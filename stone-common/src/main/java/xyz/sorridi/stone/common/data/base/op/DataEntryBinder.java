@@ -0,0 +1,19 @@
+package xyz.sorridi.stone.common.data.base.op;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binds a key and its value to the parameters of a prepared statement.
+ *
+ * @param <K> The type of the key.
+ * @param <V> The type of the value.
+ * @author atom7xyz
+ * @since 1.0
+ */
+public interface DataEntryBinder<K, V>
+{
+    void bind(@NotNull PreparedStatement statement, @NotNull K key, @NotNull V value) throws SQLException;
+}
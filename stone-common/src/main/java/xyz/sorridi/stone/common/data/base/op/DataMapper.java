@@ -0,0 +1,18 @@
+package xyz.sorridi.stone.common.data.base.op;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set.
+ *
+ * @param <T> The type of the mapped row.
+ * @author atom7xyz
+ * @since 1.0
+ */
+public interface DataMapper<T>
+{
+    T map(@NotNull ResultSet row) throws SQLException;
+}
@@ -0,0 +1,38 @@
+package xyz.sorridi.stone.common.data.structures;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+
+/**
+ * A {@link SoftReference} remembering the {@link SoftMap} entry it belongs to.
+ * Once its value is cleared by the GC, it's enqueued in the {@link SoftCleaner} queue,
+ * which removes the entry without scanning the map.
+ *
+ * @param <K> The type of the key.
+ * @param <V> The type of the value.
+ * @author atom7xyz
+ * @since 1.0
+ */
+final class KeyedSoftReference<K, V> extends SoftReference<V>
+{
+    private final K key;
+    private final SoftMap<K, V> owner;
+
+    KeyedSoftReference(K key, V value, SoftMap<K, V> owner, ReferenceQueue<Object> queue)
+    {
+        super(value, queue);
+        this.key = key;
+        this.owner = owner;
+    }
+
+    /**
+     * Removes the entry of this reference from its map, unless it was replaced in the meantime.
+     *
+     * @return If the entry was removed.
+     */
+    boolean expunge()
+    {
+        return owner.expunge(key, this);
+    }
+
+}
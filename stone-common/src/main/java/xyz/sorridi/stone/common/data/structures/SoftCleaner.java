@@ -1,25 +1,43 @@
 package xyz.sorridi.stone.common.data.structures;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 /**
- * An automated scheduled cleaner for {@link SoftMap}s.
+ * An automated cleaner for {@link SoftMap}s.
+ * <p>
+ * The soft values of every map are registered with a single {@link ReferenceQueue}. A daemon thread
+ * sleeps on the queue and removes the entry of each value as soon as the GC clears it, and writes drain
+ * the queue too. Cleaning costs what the GC collected, never a scan of the maps.
+ * </p>
+ * <p>
+ * References given through {@link SoftMap#put(Object, SoftReference)} and the like are wrapped again
+ * by the map, so every value goes through the queue.
+ * </p>
  *
  * @author atom7xyz
  * @since 1.0
  */
 public class SoftCleaner
 {
+    static final ReferenceQueue<Object> QUEUE;
+
     private static final ConcurrentLinkedQueue<SoftReference<SoftMap<?, ?>>> INSTANCES;
     private static final Stack<SoftReference<SoftMap<?, ?>>> TO_REMOVE;
+    private static final LongAdder EXPUNGED;
 
     private static ScheduledExecutorService TASK;
 
@@ -30,20 +48,29 @@ public class SoftCleaner
     {
         TO_REMOVE = new Stack<>();
         INSTANCES = new ConcurrentLinkedQueue<>();
+        EXPUNGED = new LongAdder();
+        QUEUE = new ReferenceQueue<>();
 
-        schedule(Duration.ofMinutes(10));
+        Thread.ofPlatform()
+              .name("soft-cleaner")
+              .daemon()
+              .start(SoftCleaner::expungeLoop);
     }
 
     /**
-     * Schedules the cleaner. (It is currently not possible to override the default duration)
+     * Schedules a periodic {@link #clean()}, on top of the reference queue.
+     * Only needed to run the pending maintenance of bounded maps and forget the maps collected.
      *
      * @param duration The duration between each clean.
      */
-    public static void schedule(Duration duration)
+    public static synchronized void schedule(Duration duration)
     {
         if (TASK == null)
         {
-            TASK = Executors.newScheduledThreadPool(1);
+            TASK = Executors.newSingleThreadScheduledExecutor(runnable -> Thread.ofPlatform()
+                                                                                .name("soft-cleaner-scheduled")
+                                                                                .daemon()
+                                                                                .unstarted(runnable));
         }
 
         TASK.scheduleAtFixedRate(SoftCleaner::clean, duration.toSeconds(), duration.toSeconds(), TimeUnit.SECONDS);
@@ -70,11 +97,46 @@ public class SoftCleaner
     }
 
     /**
-     * Cleans all the {@link SoftMap} instances.
+     * Removes the entries of the values cleared so far, without waiting.
+     *
+     * @return The number of entries removed.
+     */
+    public static int drain()
+    {
+        return drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes the entries of at most {@code max} values cleared so far, without waiting.
+     *
+     * @param max The maximum number of references to drain.
+     * @return The number of entries removed.
+     */
+    static int drain(int max)
+    {
+        int count = 0;
+        Reference<?> reference;
+
+        for (int i = 0; i < max && (reference = QUEUE.poll()) != null; i++)
+        {
+            if (expunge(reference))
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Drains the queue, then forgets the maps that were collected.
+     * Bounded maps run their pending maintenance, unbounded ones are never scanned.
+     *
+     * @return The summary of the clean.
      */
     public static String clean()
     {
-        AtomicInteger count = new AtomicInteger();
+        AtomicInteger count = new AtomicInteger(drain());
 
         INSTANCES.forEach(s ->
                           {
@@ -86,14 +148,7 @@ public class SoftCleaner
                               }
                               else
                               {
-                                  int res = instance.clean();
-
-                                  if (instance.size() == 0)
-                                  {
-                                      TO_REMOVE.add(s);
-                                  }
-
-                                  count.addAndGet(res);
+                                  count.addAndGet(instance.clean());
                               }
                           });
 
@@ -120,6 +175,37 @@ public class SoftCleaner
         return message;
     }
 
+    /**
+     * Reports the size, hit ratio and churn of every map, by name.
+     *
+     * @return The report lines.
+     */
+    public static List<String> report()
+    {
+        List<SoftMap<?, ?>> maps = new ArrayList<>();
+
+        for (var instance : INSTANCES)
+        {
+            var map = instance.get();
+
+            if (map != null)
+            {
+                maps.add(map);
+            }
+        }
+
+        maps.sort(Comparator.comparing(SoftMap::getName));
+
+        List<String> lines = new ArrayList<>(maps.size());
+
+        for (var map : maps)
+        {
+            lines.add(map.report());
+        }
+
+        return lines;
+    }
+
     /**
      * Sets the logging state.
      *
@@ -162,4 +248,57 @@ public class SoftCleaner
         return INSTANCES.size();
     }
 
+    /**
+     * Gets the number of entries removed since startup because the GC cleared their value.
+     *
+     * @return The number of removed entries.
+     */
+    public static long getExpunged()
+    {
+        return EXPUNGED.sum();
+    }
+
+    /**
+     * Waits for the values cleared by the GC and removes their entries.
+     */
+    private static void expungeLoop()
+    {
+        while (true)
+        {
+            try
+            {
+                expunge(QUEUE.remove());
+                drain();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                if (logging)
+                {
+                    info("Failed to expunge an entry: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of a cleared value.
+     *
+     * @param reference The cleared reference.
+     * @return If the entry was removed.
+     */
+    private static boolean expunge(Reference<?> reference)
+    {
+        if (reference instanceof KeyedSoftReference<?, ?> keyed && keyed.expunge())
+        {
+            EXPUNGED.increment();
+            return true;
+        }
+
+        return false;
+    }
+
 }
@@ -1,19 +1,37 @@
 package xyz.sorridi.stone.common.data.structures;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.NonNull;
 import org.jetbrains.annotations.Nullable;
+import xyz.sorridi.stone.common.immutable.Err;
 
 import java.lang.ref.SoftReference;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * A {@link ConcurrentHashMap} implementation with {@link SoftReference} values.
+ * <p>
+ * Entries whose value is cleared by the GC are removed through the {@link SoftCleaner} reference queue,
+ * so the cost of the cleanup follows what the GC collected instead of the size of the map.
+ * </p>
+ * <p>
+ * A map can also be bounded, see {@link #bounded(long)} and {@link #weighted(long, ToIntBiFunction)}:
+ * entries are then kept strongly and evicted by a W-TinyLFU policy once the maximum size or weight
+ * is reached, and optionally after a time without being accessed. Memory stays predictable, and the
+ * GC never wipes the map at once under heap pressure.
+ * </p>
  *
  * @param <K> The key of the Map.
  * @param <V> The value of the Map.
@@ -22,14 +40,222 @@ import java.util.stream.Stream;
  */
 public class SoftMap<K, V>
 {
-    private final ConcurrentHashMap<K, SoftReference<V>> internal;
+    // Cleared references drained on each write, at most
+    private static final int WRITE_DRAIN = 16;
+
+    // Maps being computed on the thread: a write from a compute function must not expunge from them
+    private static final ThreadLocal<int[]> COMPUTING = ThreadLocal.withInitial(() -> new int[1]);
+
+    // Entries sampled to estimate the retained size, and the overhead of an entry (node and reference)
+    private static final int SIZE_SAMPLES = 32;
+    private static final long ENTRY_OVERHEAD = 80;
+
+    private final ConcurrentMap<K, SoftReference<V>> internal;
+
+    @Nullable
+    private final Cache<K, SoftReference<V>> bounded;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder cleared = new LongAdder();
+
+    private volatile String name;
 
     public SoftMap()
     {
-        this.internal = new ConcurrentHashMap<>();
+        this(null);
+    }
+
+    /**
+     * Creates a map, bounded by the given cache.
+     *
+     * @param bounded The cache holding the entries, {@code null} for an unbounded map of soft values.
+     */
+    private SoftMap(@Nullable Cache<K, SoftReference<V>> bounded)
+    {
+        this.bounded = bounded;
+        this.internal = bounded != null ? bounded.asMap() : new ConcurrentHashMap<>();
         SoftCleaner.add(this);
     }
 
+    /**
+     * Creates a map holding at most {@code maximumSize} entries.
+     *
+     * @param maximumSize The maximum number of entries.
+     * @param <K>         The key of the Map.
+     * @param <V>         The value of the Map.
+     * @return The map.
+     */
+    public static <K, V> SoftMap<K, V> bounded(long maximumSize)
+    {
+        return bounded(maximumSize, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a map holding at most {@code maximumSize} entries,
+     * each evicted once it's not accessed for {@code expireAfterAccess}.
+     *
+     * @param maximumSize       The maximum number of entries.
+     * @param expireAfterAccess The time after which an entry not accessed is evicted, {@code 0} to disable.
+     * @param unit              The time unit of the expiration.
+     * @param <K>               The key of the Map.
+     * @param <V>               The value of the Map.
+     * @return The map.
+     */
+    public static <K, V> SoftMap<K, V> bounded(long maximumSize, long expireAfterAccess, @NonNull TimeUnit unit)
+    {
+        checkArgument(maximumSize > 0, Err.MUST_BE_POSITIVE.expect("maximumSize"));
+
+        return new SoftMap<>(expiring(Caffeine.newBuilder().maximumSize(maximumSize).recordStats(), expireAfterAccess, unit).build());
+    }
+
+    /**
+     * Creates a map holding entries up to a total weight of {@code maximumWeight}.
+     *
+     * @param maximumWeight The maximum total weight of the entries.
+     * @param weigher       The weight of an entry, computed once when it's put.
+     * @param <K>           The key of the Map.
+     * @param <V>           The value of the Map.
+     * @return The map.
+     */
+    public static <K, V> SoftMap<K, V> weighted(long maximumWeight, @NonNull ToIntBiFunction<? super K, ? super V> weigher)
+    {
+        return weighted(maximumWeight, weigher, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a map holding entries up to a total weight of {@code maximumWeight},
+     * each evicted once it's not accessed for {@code expireAfterAccess}.
+     *
+     * @param maximumWeight     The maximum total weight of the entries.
+     * @param weigher           The weight of an entry, computed once when it's put.
+     * @param expireAfterAccess The time after which an entry not accessed is evicted, {@code 0} to disable.
+     * @param unit              The time unit of the expiration.
+     * @param <K>               The key of the Map.
+     * @param <V>               The value of the Map.
+     * @return The map.
+     */
+    public static <K, V> SoftMap<K, V> weighted(long maximumWeight,
+                                                @NonNull ToIntBiFunction<? super K, ? super V> weigher,
+                                                long expireAfterAccess,
+                                                @NonNull TimeUnit unit)
+    {
+        checkArgument(maximumWeight > 0, Err.MUST_BE_POSITIVE.expect("maximumWeight"));
+
+        Caffeine<K, SoftReference<V>> builder = Caffeine.newBuilder()
+                                                        .maximumWeight(maximumWeight)
+                                                        .recordStats()
+                                                        .weigher((K key, SoftReference<V> reference) ->
+                                                                 {
+                                                                     V value = reference.get();
+                                                                     return value != null ? Math.max(0, weigher.applyAsInt(key, value)) : 0;
+                                                                 });
+
+        return new SoftMap<>(expiring(builder, expireAfterAccess, unit).build());
+    }
+
+    /**
+     * Applies the expiration after access to a cache builder.
+     *
+     * @param builder           The cache builder.
+     * @param expireAfterAccess The time after which an entry not accessed is evicted, {@code 0} to disable.
+     * @param unit              The time unit of the expiration.
+     * @param <B>               The type of the builder.
+     * @return The cache builder.
+     */
+    private static <B extends Caffeine<?, ?>> B expiring(B builder, long expireAfterAccess, TimeUnit unit)
+    {
+        checkArgument(expireAfterAccess >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("expireAfterAccess"));
+
+        if (expireAfterAccess > 0)
+        {
+            builder.expireAfterAccess(expireAfterAccess, unit);
+        }
+
+        return builder;
+    }
+
+    /**
+     * Checks if the map is bounded, holding its values strongly.
+     *
+     * @return If the map is bounded.
+     */
+    public boolean isBounded()
+    {
+        return bounded != null;
+    }
+
+    /**
+     * Sets the name of the map, shown in the {@link SoftCleaner} report.
+     *
+     * @param name The name.
+     * @return The map.
+     */
+    public SoftMap<K, V> setName(@NonNull String name)
+    {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Gets the name of the map.
+     *
+     * @return The set name, or one derived from the identity of the map.
+     */
+    public String getName()
+    {
+        var name = this.name;
+        return name != null ? name : "softmap@" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    /**
+     * Wraps a value: softly in an unbounded map, strongly in a bounded one.
+     * Soft values are tracked by the {@link SoftCleaner} queue, which removes their entry once they're cleared.
+     *
+     * @param key   The key of the value.
+     * @param value The value.
+     * @return The reference to the value.
+     */
+    private SoftReference<V> reference(K key, V value)
+    {
+        return bounded != null ? new StrongReference<>(value) : new KeyedSoftReference<>(key, value, this, SoftCleaner.QUEUE);
+    }
+
+    /**
+     * Counts a write. Writes to an unbounded map also drain a few cleared references,
+     * so the cleanup keeps up even under a burst of collections.
+     * Nothing is drained by a write made from a compute function, since draining removes entries,
+     * possibly from the map being computed.
+     */
+    private void write()
+    {
+        puts.increment();
+
+        if (bounded == null && COMPUTING.get()[0] == 0)
+        {
+            SoftCleaner.drain(WRITE_DRAIN);
+        }
+    }
+
+    /**
+     * Removes an entry whose value was cleared by the GC, unless it was replaced in the meantime.
+     *
+     * @param key       The key of the entry.
+     * @param reference The cleared reference.
+     * @return If the entry was removed.
+     */
+    boolean expunge(K key, SoftReference<V> reference)
+    {
+        if (internal.remove(key, reference))
+        {
+            cleared.increment();
+            return true;
+        }
+
+        return false;
+    }
+
     /**
      * Puts a value in the Map.
      * <br>
@@ -42,8 +268,10 @@ public class SoftMap<K, V>
      */
     public SoftReference<V> put(@NonNull K key, @NonNull V value)
     {
+        write();
+
         var soft = internal.get(key);
-        var newSoft = new SoftReference<>(value);
+        var newSoft = reference(key, value);
 
         if (soft != null && soft.get() == null)
         {
@@ -72,7 +300,9 @@ public class SoftMap<K, V>
             return soft;
         }
 
-        var newSoft = new SoftReference<>(value);
+        write();
+
+        var newSoft = reference(key, value);
 
         if (soft != null && soft.get() == null)
         {
@@ -86,7 +316,8 @@ public class SoftMap<K, V>
      * Puts a value in the Map.
      * <br>
      * <br>
-     * If the value pointed by the {@link SoftReference} is null, it will be replaced instead.
+     * The value is wrapped again, so its entry is removed once the GC clears it.
+     * A reference already cleared removes the entry instead.
      *
      * @param key   The key of the Map.
      * @param value The value of the Map.
@@ -94,21 +325,16 @@ public class SoftMap<K, V>
      */
     public SoftReference<V> put(@NonNull K key, @NonNull SoftReference<V> value)
     {
-        var soft = internal.get(key);
-
-        if (soft != null && soft.get() == null)
-        {
-            return internal.replace(key, value);
-        }
-
-        return internal.put(key, value);
+        V referent = value.get();
+        return referent != null ? put(key, referent) : internal.remove(key);
     }
 
     /**
      * Puts a value in the Map if the key is not present.
      * <br>
      * <br>
-     * If the value pointed by the {@link SoftReference} is null, it will be replaced instead.
+     * The value is wrapped again, so its entry is removed once the GC clears it.
+     * A reference already cleared is not put.
      *
      * @param key   The key of the Map.
      * @param value The value of the Map.
@@ -116,19 +342,8 @@ public class SoftMap<K, V>
      */
     public SoftReference<V> putIfAbsent(@NonNull K key, @NonNull SoftReference<V> value)
     {
-        var soft = internal.get(key);
-
-        if (containsKey(key))
-        {
-            return soft;
-        }
-
-        if (soft != null && soft.get() == null)
-        {
-            return internal.replace(key, value);
-        }
-
-        return internal.putIfAbsent(key, value);
+        V referent = value.get();
+        return referent != null ? putIfAbsent(key, referent) : internal.get(key);
     }
 
     /**
@@ -141,7 +356,18 @@ public class SoftMap<K, V>
     public V get(@NonNull K key)
     {
         var soft = getSoft(key);
-        return soft != null ? soft.get() : null;
+        V value = soft != null ? soft.get() : null;
+
+        if (value != null)
+        {
+            hits.increment();
+        }
+        else
+        {
+            misses.increment();
+        }
+
+        return value;
     }
 
     /**
@@ -175,7 +401,28 @@ public class SoftMap<K, V>
      */
     public V computeIfAbsent(@NonNull K key, @NonNull Function<? super K, ? extends V> compute)
     {
-        return internal.computeIfAbsent(key, k -> new SoftReference<>(compute.apply(k))).get();
+        V value = get(key);
+
+        if (value != null)
+        {
+            return value;
+        }
+
+        write();
+
+        int[] computing = COMPUTING.get();
+        computing[0]++;
+
+        try
+        {
+            // Also replaces a value cleared by the GC and not expunged yet
+            return internal.compute(key, (k, soft) -> soft != null && soft.get() != null ? soft : reference(k, compute.apply(k)))
+                           .get();
+        }
+        finally
+        {
+            computing[0]--;
+        }
     }
 
     /**
@@ -187,11 +434,14 @@ public class SoftMap<K, V>
      */
     public SoftReference<V> replace(@NonNull K key, @NonNull V value)
     {
-        return replace(key, new SoftReference<>(value));
+        write();
+        return internal.replace(key, reference(key, value));
     }
 
     /**
      * Replaces a value in the Map.
+     * The value is wrapped again, so its entry is removed once the GC clears it.
+     * A reference already cleared removes the entry instead.
      *
      * @param key   The key of the Map.
      * @param value The value of the Map.
@@ -199,7 +449,8 @@ public class SoftMap<K, V>
      */
     public SoftReference<V> replace(@NonNull K key, @NonNull SoftReference<V> value)
     {
-        return internal.replace(key, value);
+        V referent = value.get();
+        return referent != null ? replace(key, referent) : internal.remove(key);
     }
 
     /**
@@ -284,25 +535,186 @@ public class SoftMap<K, V>
     }
 
     /**
-     * Cleans the Map.
+     * Gets the number of reads that found a value.
      *
-     * @return The number of entries removed.
+     * @return The number of hits.
      */
-    public int clean()
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of reads that found no value, or a value cleared by the GC.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the ratio of reads that found a value.
+     *
+     * @return The hit ratio, between {@code 0} and {@code 1}.
+     */
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Gets the number of writes.
+     *
+     * @return The number of puts.
+     */
+    public long getPuts()
+    {
+        return puts.sum();
+    }
+
+    /**
+     * Gets the number of entries removed because the GC cleared their value.
+     *
+     * @return The number of cleared entries.
+     */
+    public long getCleared()
+    {
+        return cleared.sum();
+    }
+
+    /**
+     * Gets the number of entries evicted by the size, weight or expiration policy of a bounded map.
+     *
+     * @return The number of evicted entries, {@code 0} if the map is unbounded.
+     */
+    public long getEvicted()
+    {
+        return bounded != null ? bounded.stats().evictionCount() : 0;
+    }
+
+    /**
+     * Estimates the memory retained by the map, from a sample of its entries.
+     * Strings, arrays and collections are weighed by their length, anything else as a plain object.
+     *
+     * @return The estimated retained size, in bytes.
+     */
+    public long getEstimatedBytes()
+    {
+        int size = internal.size();
+
+        if (size == 0)
+        {
+            return 0;
+        }
+
+        long sampled = 0;
+        int count = 0;
+
+        for (var entry : internal.entrySet())
+        {
+            if (count == SIZE_SAMPLES)
+            {
+                break;
+            }
+
+            sampled += ENTRY_OVERHEAD + estimate(entry.getKey()) + estimate(entry.getValue().get());
+            count++;
+        }
+
+        return count == 0 ? 0 : sampled / count * size;
+    }
+
+    /**
+     * Reports the size, hit ratio and churn of the map.
+     *
+     * @return The report line.
+     */
+    public String report()
+    {
+        return String.format("%s%s size=%d ~%dKB hit=%.1f%% (%d/%d) puts=%d gc=%d evicted=%d",
+                             getName(),
+                             isBounded() ? " [bounded]" : "",
+                             size(),
+                             getEstimatedBytes() / 1024,
+                             getHitRatio() * 100,
+                             getHits(),
+                             getHits() + getMisses(),
+                             getPuts(),
+                             getCleared(),
+                             getEvicted());
+    }
+
+    /**
+     * Estimates the shallow size of a key or value, including the strings it holds.
+     *
+     * @param object The key or value.
+     * @return The estimated size, in bytes.
+     */
+    private static long estimate(Object object)
     {
-        AtomicInteger count = new AtomicInteger();
+        if (object == null)
+        {
+            return 0;
+        }
+
+        if (object instanceof String string)
+        {
+            return 40 + string.length();
+        }
+
+        if (object instanceof byte[] bytes)
+        {
+            return 16 + bytes.length;
+        }
 
-        entrySet().removeIf(entry ->
+        if (object instanceof Object[] array)
         {
-            if (entry.getValue().get() == null)
+            long size = 16 + 4L * array.length;
+
+            for (Object element : array)
+            {
+                size += estimate(element);
+            }
+
+            return size;
+        }
+
+        if (object instanceof Collection<?> collection)
+        {
+            long size = 16 + 8L * collection.size();
+
+            for (Object element : collection)
             {
-                count.incrementAndGet();
-                return true;
+                size += estimate(element);
             }
-            return false;
-        });
 
-        return count.get();
+            return size;
+        }
+
+        return 16;
+    }
+
+    /**
+     * Cleans the Map, run by {@link SoftCleaner#clean()}.
+     * The entries of cleared values are already removed through the {@link SoftCleaner} queue,
+     * every value put being wrapped in a tracked reference, so an unbounded map has nothing to scan.
+     * A bounded map runs its pending evictions.
+     *
+     * @return The number of entries removed.
+     */
+    public int clean()
+    {
+        if (bounded != null)
+        {
+            // Values are held strongly, only the pending evictions are left to do
+            bounded.cleanUp();
+        }
+
+        return 0;
     }
 
     /**
@@ -315,12 +727,60 @@ public class SoftMap<K, V>
 
     /**
      * Handler of the Map.
+     * References put through it are not tracked by the {@link SoftCleaner} queue.
      *
      * @return The handler of the Map.
+     * @throws IllegalStateException If the map is bounded, its entries are only reachable through {@link #view()}.
      */
     public ConcurrentHashMap<K, SoftReference<V>> handle()
+    {
+        if (!(internal instanceof ConcurrentHashMap<K, SoftReference<V>> map))
+        {
+            throw new IllegalStateException("The map " + getName() + " is bounded, use view() instead");
+        }
+
+        return map;
+    }
+
+    /**
+     * Live view of the entries of the Map, bounded or not.
+     * Writes through the view of a bounded map apply its eviction policy too,
+     * but references put through it are not tracked by the {@link SoftCleaner} queue.
+     *
+     * @return The view of the Map.
+     */
+    public ConcurrentMap<K, SoftReference<V>> view()
     {
         return internal;
     }
 
+    /**
+     * A reference never cleared by the GC, holding the values of a bounded map.
+     * Its referent is left {@code null}, so the GC doesn't even track it.
+     *
+     * @param <V> The type of the value.
+     */
+    private static final class StrongReference<V> extends SoftReference<V>
+    {
+        private final V value;
+
+        StrongReference(V value)
+        {
+            super(null);
+            this.value = value;
+        }
+
+        @Override
+        public V get()
+        {
+            return value;
+        }
+
+        @Override
+        public void clear()
+        {
+            // Evicted by the map, never cleared
+        }
+    }
+
 }
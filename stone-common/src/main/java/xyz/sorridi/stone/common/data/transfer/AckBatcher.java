@@ -0,0 +1,128 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.Channel;
+import lombok.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Batches the acknowledgements of a consumer channel.
+ * <p>
+ * Deliveries complete out of order when handled on different lanes, so the outcome of each
+ * delivery tag is kept in a ring buffer, and only the contiguous prefix of completed tags
+ * is settled: successes with a single {@code basicAck(tag, multiple=true)}, failures with
+ * a {@code basicNack} in between, putting the message back on the queue or rejecting it for good.
+ * The prefix is settled once it reaches the batch size, or as soon as every delivered message
+ * is complete so the prefetch window never stalls.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+class AckBatcher
+{
+    private static final byte PENDING = 0, SUCCEEDED = 1, FAILED = 2, REQUEUED = 3;
+
+    private final Channel channel;
+    private final int batch;
+
+    private final byte[] outcomes;
+    private final int mask;
+
+    private long next = 1, delivered, acked;
+
+    /**
+     * Creates a new ack batcher.
+     *
+     * @param channel  The consumer channel.
+     * @param prefetch The prefetch of the channel, bounding the unsettled deliveries.
+     * @param batch    The number of completed deliveries acknowledged at once.
+     */
+    AckBatcher(@NonNull Channel channel, int prefetch, int batch)
+    {
+        this.channel = channel;
+        this.batch = Math.max(1, Math.min(batch, prefetch));
+        this.outcomes = new byte[Integer.highestOneBit(Math.max(prefetch, 1) * 2 - 1) << 1];
+        this.mask = outcomes.length - 1;
+    }
+
+    /**
+     * Records a delivery, before it's dispatched.
+     *
+     * @param tag The delivery tag.
+     */
+    synchronized void delivered(long tag)
+    {
+        if (next > tag)
+        {
+            // Tags restarted after a recovery
+            next = tag;
+            acked = tag - 1;
+            delivered = tag;
+        }
+
+        if (tag > delivered)
+        {
+            delivered = tag;
+        }
+    }
+
+    /**
+     * Records the outcome of a delivery and settles the completed prefix if needed.
+     *
+     * @param tag     The delivery tag.
+     * @param success Whether the delivery was handled successfully.
+     * @param requeue Whether a failed delivery is put back on the queue, rather than rejected for good.
+     * @throws IOException If the channel fails to send the acknowledgements.
+     */
+    synchronized void complete(long tag, boolean success, boolean requeue) throws IOException
+    {
+        if (tag < next)
+        {
+            return;
+        }
+
+        outcomes[index(tag)] = success ? SUCCEEDED : requeue ? REQUEUED : FAILED;
+
+        while (next <= delivered && outcomes[index(next)] != PENDING)
+        {
+            byte outcome = outcomes[index(next)];
+
+            if (outcome != SUCCEEDED)
+            {
+                flush(next - 1);
+                channel.basicNack(next, false, outcome == REQUEUED);
+                acked = next;
+            }
+
+            outcomes[index(next)] = PENDING;
+            next++;
+        }
+
+        if (next - 1 - acked >= batch || next > delivered)
+        {
+            flush(next - 1);
+        }
+    }
+
+    /**
+     * Acknowledges every successful delivery up to the given tag.
+     *
+     * @param upTo The last tag to acknowledge.
+     * @throws IOException If the channel fails to send the acknowledgement.
+     */
+    private void flush(long upTo) throws IOException
+    {
+        if (upTo > acked)
+        {
+            channel.basicAck(upTo, true);
+            acked = upTo;
+        }
+    }
+
+    private int index(long tag)
+    {
+        return (int) (tag & mask);
+    }
+
+}
@@ -0,0 +1,459 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A pool of channels over a single long-lived connection.
+ * <p>
+ * Channels are created lazily up to the size of the pool and reused across actions.
+ * Closed channels are discarded when borrowed or given back.
+ * </p>
+ * <p>
+ * A connection with automatic recovery (the client default) is never replaced while it recovers:
+ * borrowers wait for it, and the client restores its channels and consumers. Declarations can be run
+ * again through {@link #onRecovery(Consumer)} before the topology is recovered. A connection without it
+ * is re-created once lost, right away rather than on the next borrow, and {@link #onReconnect(Consumer)}
+ * lets the owner subscribe again on the new one.
+ * </p>
+ * <p>
+ * Every channel is put in confirm mode, with a {@link ConfirmTracker} settling the
+ * futures of the messages published on it.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+class ChannelPool implements AutoCloseable
+{
+    private static final long RECONNECT_DELAY = TimeUnit.SECONDS.toMillis(1);
+
+    private final TransferOrigin origin;
+    private final Executor executor;
+    private final int size;
+
+    private final BlockingQueue<Channel> idle;
+    private final AtomicInteger created;
+    private final Map<Channel, ConfirmTracker> trackers;
+
+    private final Object recovery;
+    private volatile Consumer<Connection> onReconnect, onRecovery;
+
+    private volatile Connection connection;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new channel pool.
+     *
+     * @param origin   The origin to connect to.
+     * @param executor The executor re-creating a lost connection.
+     * @param size     The maximum number of channels.
+     */
+    ChannelPool(@NonNull TransferOrigin origin, @NonNull Executor executor, int size)
+    {
+        checkArgument(size > 0, Err.MUST_BE_POSITIVE.expect("size"));
+
+        this.origin = origin;
+        this.executor = executor;
+        this.size = size;
+        this.recovery = new Object();
+        this.idle = new LinkedBlockingQueue<>();
+        this.created = new AtomicInteger();
+        this.trackers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Sets what runs on a connection re-created after the previous one was lost,
+     * e.g. the declarations and consumers started on the previous one.
+     *
+     * @param hook The hook, given the new connection.
+     */
+    void onReconnect(@Nullable Consumer<Connection> hook)
+    {
+        this.onReconnect = hook;
+    }
+
+    /**
+     * Sets what runs on a recovering connection before its topology is recovered,
+     * e.g. declarations made on channels that have been closed since.
+     *
+     * @param hook The hook, given the recovering connection.
+     */
+    void onRecovery(@Nullable Consumer<Connection> hook)
+    {
+        this.onRecovery = hook;
+    }
+
+    /**
+     * Gets the shared connection, opening a new one if needed.
+     * A connection being recovered by the client is returned as is.
+     *
+     * @return The connection.
+     * @throws IOException      If an I/O error occurs.
+     * @throws TimeoutException If the connection times out.
+     */
+    Connection getConnection() throws IOException, TimeoutException
+    {
+        var current = connection;
+
+        if (current != null && (current.isOpen() || isRecovering(current)))
+        {
+            return current;
+        }
+
+        Connection lost;
+
+        synchronized (this)
+        {
+            if (closed)
+            {
+                throw new IOException("The channel pool is closed");
+            }
+
+            if (connection != null && (connection.isOpen() || isRecovering(connection)))
+            {
+                return connection;
+            }
+
+            lost = connection;
+
+            if (lost != null)
+            {
+                closeQuietly(lost);
+            }
+
+            connection = current = watch(origin.getConnection());
+        }
+
+        var hook = onReconnect;
+
+        if (lost != null && hook != null)
+        {
+            hook.accept(current);
+        }
+
+        return current;
+    }
+
+    /**
+     * Borrows a channel, waiting for one to be given back if the pool is exhausted.
+     *
+     * @return An open channel.
+     * @throws IOException          If the channel cannot be created or the pool is closed.
+     * @throws TimeoutException     If the connection times out.
+     * @throws InterruptedException If interrupted while waiting for a channel.
+     */
+    Channel borrow() throws IOException, TimeoutException, InterruptedException
+    {
+        var channel = idle.poll();
+
+        while (true)
+        {
+            if (closed)
+            {
+                throw new IOException("The channel pool is closed");
+            }
+
+            if (channel != null)
+            {
+                if (channel.isOpen())
+                {
+                    return channel;
+                }
+
+                discard(channel);
+            }
+
+            // The client restores the connection, a channel opened meanwhile would fail
+            if (awaitRecovery())
+            {
+                channel = idle.poll();
+                continue;
+            }
+
+            int count = created.get();
+
+            if (count < size && created.compareAndSet(count, count + 1))
+            {
+                try
+                {
+                    return open();
+                }
+                catch (IOException | TimeoutException | RuntimeException e)
+                {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+
+            channel = idle.poll(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Gets the confirm tracker of a pooled channel.
+     *
+     * @param channel The channel.
+     * @return The confirm tracker of the channel.
+     */
+    ConfirmTracker getTracker(@NonNull Channel channel)
+    {
+        return trackers.get(channel);
+    }
+
+    /**
+     * Gives a channel back to the pool.
+     *
+     * @param channel The channel to give back.
+     * @param broken  Whether the channel should be discarded.
+     */
+    void giveBack(@NonNull Channel channel, boolean broken)
+    {
+        if (broken || closed || !channel.isOpen())
+        {
+            discard(channel);
+        }
+        else
+        {
+            idle.offer(channel);
+        }
+    }
+
+    /**
+     * Closes every idle channel and the connection.
+     */
+    @Override
+    public synchronized void close()
+    {
+        closed = true;
+
+        Channel channel;
+
+        while ((channel = idle.poll()) != null)
+        {
+            discard(channel);
+        }
+
+        if (connection != null)
+        {
+            closeQuietly(connection);
+            connection = null;
+        }
+
+        synchronized (recovery)
+        {
+            recovery.notifyAll();
+        }
+    }
+
+    /**
+     * Watches a new connection: its recovery, if the client recovers it, or its loss otherwise.
+     *
+     * @param connection The connection.
+     * @return The connection.
+     */
+    private Connection watch(Connection connection)
+    {
+        if (connection instanceof Recoverable recoverable)
+        {
+            recoverable.addRecoveryListener(new RecoveryListener()
+            {
+                @Override
+                public void handleRecoveryStarted(Recoverable recoverable)
+                {
+                }
+
+                @Override
+                public void handleTopologyRecoveryStarted(Recoverable recoverable)
+                {
+                    var hook = onRecovery;
+
+                    if (hook != null)
+                    {
+                        hook.accept(connection);
+                    }
+                }
+
+                @Override
+                public void handleRecovery(Recoverable recoverable)
+                {
+                    synchronized (recovery)
+                    {
+                        recovery.notifyAll();
+                    }
+                }
+            });
+        }
+        else
+        {
+            connection.addShutdownListener(cause ->
+                                           {
+                                               if (!cause.isInitiatedByApplication())
+                                               {
+                                                   reconnect();
+                                               }
+                                           });
+        }
+
+        return connection;
+    }
+
+    /**
+     * Re-creates a lost connection in the background, retrying until it succeeds or the pool is closed.
+     */
+    private void reconnect()
+    {
+        CompletableFuture.runAsync(() ->
+                                   {
+                                       if (closed)
+                                       {
+                                           return;
+                                       }
+
+                                       try
+                                       {
+                                           getConnection();
+                                       }
+                                       catch (IOException | TimeoutException | RuntimeException e)
+                                       {
+                                           if (!closed)
+                                           {
+                                               CompletableFuture.delayedExecutor(RECONNECT_DELAY, TimeUnit.MILLISECONDS, executor)
+                                                                .execute(this::reconnect);
+                                           }
+                                       }
+                                   }, executor);
+    }
+
+    /**
+     * Waits a bit for the connection to be recovered by the client, if it's being recovered.
+     *
+     * @return {@code true} if the connection was being recovered, {@code false} otherwise.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private boolean awaitRecovery() throws InterruptedException
+    {
+        var current = connection;
+
+        if (current == null || current.isOpen() || !isRecovering(current))
+        {
+            return false;
+        }
+
+        synchronized (recovery)
+        {
+            if (!current.isOpen() && !closed)
+            {
+                recovery.wait(RECONNECT_DELAY);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a closed connection is being recovered by the client,
+     * which is the case unless the application closed it.
+     *
+     * @param connection The connection.
+     * @return {@code true} if the connection is being recovered.
+     */
+    private static boolean isRecovering(Connection connection)
+    {
+        if (!(connection instanceof Recoverable))
+        {
+            return false;
+        }
+
+        var reason = connection.getCloseReason();
+        return reason == null || !reason.isInitiatedByApplication();
+    }
+
+    /**
+     * Closes a channel and frees its slot in the pool.
+     *
+     * @param channel The channel to discard.
+     */
+    private void discard(Channel channel)
+    {
+        created.decrementAndGet();
+
+        var tracker = trackers.remove(channel);
+
+        if (tracker != null)
+        {
+            tracker.failAll(new IOException("Channel closed before the broker confirmed the message"));
+        }
+
+        if (channel.isOpen())
+        {
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * Opens a new channel in confirm mode.
+     *
+     * @return The channel.
+     * @throws IOException      If the channel cannot be created.
+     * @throws TimeoutException If the connection times out.
+     */
+    private Channel open() throws IOException, TimeoutException
+    {
+        var channel = getConnection().createChannel();
+        var tracker = new ConfirmTracker();
+
+        try
+        {
+            channel.confirmSelect();
+        }
+        catch (IOException e)
+        {
+            closeQuietly(channel);
+            throw e;
+        }
+
+        channel.addConfirmListener(tracker);
+        channel.addShutdownListener(tracker::failAll);
+
+        trackers.put(channel, tracker);
+        return channel;
+    }
+
+    /**
+     * Closes a channel or a connection, ignoring the errors of an already dying one.
+     *
+     * @param closeable The channel or connection to close.
+     */
+    private void closeQuietly(AutoCloseable closeable)
+    {
+        try
+        {
+            origin.close(closeable);
+        }
+        catch (RuntimeException ignored)
+        {
+            // Already being shut down.
+        }
+    }
+
+}
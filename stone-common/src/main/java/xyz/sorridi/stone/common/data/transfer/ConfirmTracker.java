@@ -0,0 +1,235 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.ConfirmListener;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tracks the publisher confirms of a single channel.
+ * <p>
+ * Sequence numbers of a channel only grow, so the pending futures are kept in a ring buffer
+ * indexed by the sequence number itself: no boxing and no map entries per message.
+ * Confirms acknowledging many messages at once ({@code multiple=true}) settle the whole
+ * range in a single pass. Futures are completed outside the lock, never on the publishing thread.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+class ConfirmTracker implements ConfirmListener
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private CompletableFuture<Void>[] slots;
+    private int mask;
+
+    // Tracked sequence numbers are in [head, tail)
+    private long head, tail;
+
+    @SuppressWarnings("unchecked")
+    ConfirmTracker()
+    {
+        this.slots = new CompletableFuture[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+    }
+
+    /**
+     * Registers the future of the message published with the given sequence number.
+     *
+     * @param seq    The publish sequence number.
+     * @param future The future to complete once the broker confirms the message.
+     */
+    synchronized void register(long seq, @NonNull CompletableFuture<Void> future)
+    {
+        if (head == tail)
+        {
+            head = seq;
+            tail = seq;
+        }
+        else if (seq < head)
+        {
+            future.completeExceptionally(new IOException("Sequence number already confirmed: " + seq));
+            return;
+        }
+
+        while (seq - head >= slots.length)
+        {
+            grow();
+        }
+
+        slots[index(seq)] = future;
+        tail = Math.max(tail, seq + 1);
+    }
+
+    /**
+     * Stops tracking a sequence number, without completing its future.
+     *
+     * @param seq The publish sequence number.
+     * @return The future that was tracked, or {@code null} if none.
+     */
+    synchronized CompletableFuture<Void> remove(long seq)
+    {
+        if (seq < head || seq >= tail)
+        {
+            return null;
+        }
+
+        var future = take(seq);
+        advance();
+        return future;
+    }
+
+    /**
+     * Gets the number of messages still waiting for a confirm.
+     *
+     * @return The number of pending messages.
+     */
+    synchronized int getPending()
+    {
+        int count = 0;
+
+        for (long seq = head; seq < tail; seq++)
+        {
+            if (slots[index(seq)] != null)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple)
+    {
+        settle(deliveryTag, multiple, null);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple)
+    {
+        settle(deliveryTag, multiple, new IOException("Message rejected by the broker: " + deliveryTag));
+    }
+
+    /**
+     * Fails every pending message, e.g. once the channel has been closed.
+     *
+     * @param cause The cause of the failure.
+     */
+    void failAll(@NonNull Throwable cause)
+    {
+        List<CompletableFuture<Void>> settled = new ArrayList<>();
+
+        synchronized (this)
+        {
+            for (long seq = head; seq < tail; seq++)
+            {
+                var future = take(seq);
+
+                if (future != null)
+                {
+                    settled.add(future);
+                }
+            }
+
+            head = tail;
+        }
+
+        settled.forEach(future -> future.completeExceptionally(cause));
+    }
+
+    /**
+     * Settles one message, or every message up to the given tag if {@code multiple} is set.
+     *
+     * @param deliveryTag The sequence number confirmed by the broker.
+     * @param multiple    Whether all the messages up to the tag are confirmed.
+     * @param cause       The cause of the rejection, {@code null} if acknowledged.
+     */
+    private void settle(long deliveryTag, boolean multiple, Throwable cause)
+    {
+        List<CompletableFuture<Void>> settled = new ArrayList<>(multiple ? 16 : 1);
+
+        synchronized (this)
+        {
+            long from = multiple ? head : Math.max(deliveryTag, head);
+            long to = Math.min(deliveryTag, tail - 1);
+
+            for (long seq = from; seq <= to; seq++)
+            {
+                var future = take(seq);
+
+                if (future != null)
+                {
+                    settled.add(future);
+                }
+            }
+
+            advance();
+        }
+
+        for (var future : settled)
+        {
+            if (cause == null)
+            {
+                future.complete(null);
+            }
+            else
+            {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Takes the future of a sequence number out of the buffer.
+     *
+     * @param seq The sequence number.
+     * @return The future, or {@code null} if none.
+     */
+    private CompletableFuture<Void> take(long seq)
+    {
+        int index = index(seq);
+        var future = slots[index];
+        slots[index] = null;
+        return future;
+    }
+
+    /**
+     * Moves the head past the sequence numbers already settled.
+     */
+    private void advance()
+    {
+        while (head < tail && slots[index(head)] == null)
+        {
+            head++;
+        }
+    }
+
+    /**
+     * Doubles the capacity of the buffer, keeping every pending future.
+     */
+    @SuppressWarnings("unchecked")
+    private void grow()
+    {
+        CompletableFuture<Void>[] grown = new CompletableFuture[slots.length << 1];
+        int grownMask = grown.length - 1;
+
+        for (long seq = head; seq < tail; seq++)
+        {
+            grown[(int) (seq & grownMask)] = slots[index(seq)];
+        }
+
+        slots = grown;
+        mask = grownMask;
+    }
+
+    private int index(long seq)
+    {
+        return (int) (seq & mask);
+    }
+
+}
@@ -0,0 +1,338 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import lombok.NonNull;
+import xyz.sorridi.stone.common.data.transfer.op.TransferMessage;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An in-process stand-in for the broker, used by a {@link TransferOrigin} set to loopback.
+ * <p>
+ * Queues live in memory. Publishing to the default exchange ({@code ""}) routes by queue name,
+ * any other exchange routes to the queues bound with the same routing key, or with {@code "#"}.
+ * Each message goes to one subscriber of the queue, round-robin; messages published while a queue
+ * has no subscriber are kept until one subscribes, up to the capacity of the queue.
+ * </p>
+ * <p>
+ * Deliveries need no acknowledgement, and messages are confirmed as soon as they're routed.
+ * Raw {@link xyz.sorridi.stone.common.data.transfer.op.TransferAction}s can't run without a channel,
+ * only {@link TransferMessage}s are supported.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public class LoopbackBroker
+{
+    private static final int DEFAULT_CAPACITY = 65_536;
+
+    private final Map<String, LoopbackQueue> queues;
+    private final Map<String, List<Binding>> bindings;
+    private final int capacity;
+
+    private final LongAdder published, unroutable, dropped;
+
+    /**
+     * Creates a loopback broker with the default queue capacity.
+     */
+    public LoopbackBroker()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a loopback broker.
+     *
+     * @param capacity The maximum number of messages a queue keeps while it has no subscriber.
+     */
+    public LoopbackBroker(int capacity)
+    {
+        checkArgument(capacity > 0, Err.MUST_BE_POSITIVE.expect("capacity"));
+
+        this.capacity = capacity;
+        this.queues = new ConcurrentHashMap<>();
+        this.bindings = new ConcurrentHashMap<>();
+        this.published = new LongAdder();
+        this.unroutable = new LongAdder();
+        this.dropped = new LongAdder();
+    }
+
+    /**
+     * Declares a queue, if it doesn't exist yet.
+     *
+     * @param queue The name of the queue.
+     * @return The loopback broker (for method chaining).
+     */
+    public LoopbackBroker declareQueue(@NonNull String queue)
+    {
+        queue(queue);
+        return this;
+    }
+
+    /**
+     * Binds a queue to an exchange, declaring the queue if needed.
+     *
+     * @param queue      The name of the queue.
+     * @param exchange   The name of the exchange.
+     * @param routingKey The routing key to match, {@code "#"} to match any.
+     * @return The loopback broker (for method chaining).
+     */
+    public LoopbackBroker bind(@NonNull String queue, @NonNull String exchange, @NonNull String routingKey)
+    {
+        var binding = new Binding(queue(queue), routingKey);
+        var list = bindings.computeIfAbsent(exchange, k -> new CopyOnWriteArrayList<>());
+
+        if (!list.contains(binding))
+        {
+            list.add(binding);
+        }
+
+        return this;
+    }
+
+    /**
+     * Removes the binding of a queue to an exchange.
+     *
+     * @param queue      The name of the queue.
+     * @param exchange   The name of the exchange.
+     * @param routingKey The routing key of the binding.
+     * @return The loopback broker (for method chaining).
+     */
+    public LoopbackBroker unbind(@NonNull String queue, @NonNull String exchange, @NonNull String routingKey)
+    {
+        var list = bindings.get(exchange);
+
+        if (list != null)
+        {
+            list.removeIf(binding -> binding.queue().name.equals(queue) && binding.routingKey().equals(routingKey));
+        }
+
+        return this;
+    }
+
+    /**
+     * Routes a message to the matching queues.
+     *
+     * @param message The message to route.
+     * @return The number of queues the message was routed to.
+     */
+    public int publish(@NonNull TransferMessage message)
+    {
+        published.increment();
+
+        String exchange = message.exchange();
+        String routingKey = message.routingKey();
+        int routed = 0;
+
+        if (exchange.isEmpty())
+        {
+            var queue = queues.get(routingKey);
+
+            if (queue != null)
+            {
+                queue.offer(message);
+                routed++;
+            }
+        }
+        else
+        {
+            var list = bindings.get(exchange);
+
+            if (list != null)
+            {
+                for (var binding : list)
+                {
+                    if (binding.matches(routingKey))
+                    {
+                        binding.queue().offer(message);
+                        routed++;
+                    }
+                }
+            }
+        }
+
+        if (routed == 0)
+        {
+            unroutable.increment();
+        }
+
+        return routed;
+    }
+
+    /**
+     * Subscribes to a queue, declaring it if needed. Messages kept by the queue are delivered right away.
+     *
+     * @param queue    The name of the queue.
+     * @param consumer Receives the deliveries, on the publishing thread.
+     * @return Cancels the subscription once run.
+     */
+    Runnable subscribe(@NonNull String queue, @NonNull Consumer<Delivery> consumer)
+    {
+        var target = queue(queue);
+        target.subscribe(consumer);
+        target.drain();
+
+        return () -> target.unsubscribe(consumer);
+    }
+
+    /**
+     * Gets the number of messages kept by a queue, waiting for a subscriber.
+     *
+     * @param queue The name of the queue.
+     * @return The queue depth.
+     */
+    public int getDepth(@NonNull String queue)
+    {
+        var target = queues.get(queue);
+        return target != null ? target.depth.get() : 0;
+    }
+
+    /**
+     * Gets the number of messages published.
+     *
+     * @return The number of published messages.
+     */
+    public long getPublished()
+    {
+        return published.sum();
+    }
+
+    /**
+     * Gets the number of messages that matched no queue.
+     *
+     * @return The number of unroutable messages.
+     */
+    public long getUnroutable()
+    {
+        return unroutable.sum();
+    }
+
+    /**
+     * Gets the number of messages dropped because a queue without subscribers was full.
+     *
+     * @return The number of dropped messages.
+     */
+    public long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    private LoopbackQueue queue(String name)
+    {
+        return queues.computeIfAbsent(name, LoopbackQueue::new);
+    }
+
+    /**
+     * A binding of a queue to an exchange.
+     *
+     * @param queue      The bound queue.
+     * @param routingKey The routing key to match.
+     */
+    private record Binding(LoopbackQueue queue, String routingKey)
+    {
+        boolean matches(String key)
+        {
+            return routingKey.equals("#") || routingKey.equals(key);
+        }
+    }
+
+    /**
+     * An in-memory queue, delivering straight to its subscribers or keeping the messages until one subscribes.
+     */
+    private class LoopbackQueue
+    {
+        private final String name;
+        private volatile List<Consumer<Delivery>> subscribers;
+        private final Queue<TransferMessage> pending;
+        private final AtomicInteger depth, next;
+        private final AtomicLong tags;
+
+        LoopbackQueue(String name)
+        {
+            this.name = name;
+            this.subscribers = List.of();
+            this.pending = new ConcurrentLinkedQueue<>();
+            this.depth = new AtomicInteger();
+            this.next = new AtomicInteger();
+            this.tags = new AtomicLong();
+        }
+
+        synchronized void subscribe(Consumer<Delivery> consumer)
+        {
+            var list = new ArrayList<>(subscribers);
+            list.add(consumer);
+            subscribers = List.copyOf(list);
+        }
+
+        synchronized void unsubscribe(Consumer<Delivery> consumer)
+        {
+            var list = new ArrayList<>(subscribers);
+            list.remove(consumer);
+            subscribers = List.copyOf(list);
+        }
+
+        void offer(TransferMessage message)
+        {
+            if (!subscribers.isEmpty() && depth.get() == 0)
+            {
+                deliver(message);
+                return;
+            }
+
+            if (depth.incrementAndGet() > capacity)
+            {
+                depth.decrementAndGet();
+                dropped.increment();
+                return;
+            }
+
+            pending.offer(message);
+            drain();
+        }
+
+        void drain()
+        {
+            TransferMessage message;
+
+            while (!subscribers.isEmpty() && (message = pending.poll()) != null)
+            {
+                depth.decrementAndGet();
+                deliver(message);
+            }
+        }
+
+        private void deliver(TransferMessage message)
+        {
+            var list = subscribers;
+            int size = list.size();
+
+            if (size == 0)
+            {
+                // The last subscriber left in the meantime
+                offer(message);
+                return;
+            }
+
+            var envelope = new Envelope(tags.incrementAndGet(), false, message.exchange(), message.routingKey());
+            var delivery = new Delivery(envelope, message.properties(), message.body());
+
+            list.get(Math.floorMod(next.getAndIncrement(), size)).accept(delivery);
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+/**
+ * What a {@link TransferWorker} does with an action once its queue is full.
+ * <br>
+ * <ul>
+ * <li>{@link OverflowPolicy#BLOCK}: The caller waits for room, up to a timeout, then the action is dropped.</li>
+ * <li>{@link OverflowPolicy#DROP_OLDEST}: The oldest queued action is dropped to make room.</li>
+ * <li>{@link OverflowPolicy#DROP_NEWEST}: The submitted action is dropped.</li>
+ * <li>{@link OverflowPolicy#SPILL}: Messages are appended to a spill file and queued again once there is room.
+ * Actions that are not messages can't be written to disk, so they fall back to {@link OverflowPolicy#BLOCK}.</li>
+ * </ul>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public enum OverflowPolicy
+{
+    BLOCK,
+    DROP_OLDEST,
+    DROP_NEWEST,
+    SPILL
+}
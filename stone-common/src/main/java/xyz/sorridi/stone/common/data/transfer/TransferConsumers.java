@@ -0,0 +1,235 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Delivery;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.sorridi.stone.common.data.transfer.op.TransferHandler;
+import xyz.sorridi.stone.common.immutable.Err;
+import xyz.sorridi.stone.common.threading.Pool;
+import xyz.sorridi.stone.common.utils.discord.StoneLogger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The consumers of a {@link TransferWorker}.
+ * <p>
+ * Each subscription is consumed by a configurable number of channels, each with its own prefetch.
+ * Deliveries are dispatched to single-threaded lanes chosen by the key of the message, so messages
+ * sharing a key are handled in order while different keys run in parallel. Ordering holds for the
+ * messages delivered on the same channel: with more than one consumer per queue, route the keys
+ * to distinct queues to keep it strict.
+ * </p>
+ * <p>
+ * A message whose handler throws is put back on its queue once, if requeueing is enabled, and rejected
+ * when it fails again on redelivery: the broker then dead-letters it if the queue has a dead-letter
+ * exchange, and discards it otherwise.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+class TransferConsumers implements AutoCloseable
+{
+    private final StoneLogger logger;
+    private final Pool[] lanes;
+    private final List<Subscription> subscriptions;
+    private final List<Runnable> cancels;
+
+    private final int consumers, prefetch, ackBatch;
+    private final boolean requeue;
+
+    /**
+     * Creates the consumers.
+     *
+     * @param name          The name of the lanes.
+     * @param logger        The logger for the handler failures.
+     * @param subscriptions The queues to consume.
+     * @param lanes         The number of dispatch lanes.
+     * @param consumers     The number of consumer channels per subscription.
+     * @param prefetch      The prefetch of each consumer channel.
+     * @param ackBatch      The number of deliveries acknowledged at once.
+     * @param requeue       Whether a message failing for the first time is put back on its queue.
+     */
+    TransferConsumers(@NonNull String name,
+                      @NonNull StoneLogger logger,
+                      @NonNull List<Subscription> subscriptions,
+                      int lanes,
+                      int consumers,
+                      int prefetch,
+                      int ackBatch,
+                      boolean requeue)
+    {
+        checkArgument(lanes > 0, Err.MUST_BE_POSITIVE.expect("lanes"));
+        checkArgument(consumers > 0, Err.MUST_BE_POSITIVE.expect("consumers"));
+        checkArgument(prefetch > 0, Err.MUST_BE_POSITIVE.expect("prefetch"));
+        checkArgument(ackBatch > 0, Err.MUST_BE_POSITIVE.expect("ackBatch"));
+
+        this.logger = logger;
+        this.consumers = consumers;
+        this.prefetch = prefetch;
+        this.ackBatch = ackBatch;
+        this.requeue = requeue;
+        this.subscriptions = List.copyOf(subscriptions);
+        this.cancels = new ArrayList<>();
+        this.lanes = new Pool[lanes];
+
+        for (int i = 0; i < lanes; i++)
+        {
+            this.lanes[i] = new Pool("lane-" + name + "-" + i, 1);
+        }
+    }
+
+    /**
+     * Opens the consumer channels of every subscription.
+     *
+     * @param connection The connection to consume from.
+     * @throws IOException If a channel cannot be opened or a queue cannot be consumed.
+     */
+    void start(@NonNull Connection connection) throws IOException
+    {
+        for (var subscription : subscriptions)
+        {
+            for (int i = 0; i < consumers; i++)
+            {
+                Channel channel = connection.createChannel();
+                var acks = new AckBatcher(channel, prefetch, ackBatch);
+
+                channel.basicQos(prefetch);
+                channel.basicConsume(subscription.queue(),
+                                     false,
+                                     (consumerTag, delivery) -> dispatch(subscription, delivery, acks),
+                                     consumerTag -> logger.warn("Consumer of " + subscription.queue() + " cancelled"));
+            }
+        }
+    }
+
+    /**
+     * Subscribes every subscription to a loopback broker. Its deliveries need no acknowledgement.
+     *
+     * @param broker The loopback broker to consume from.
+     */
+    void start(@NonNull LoopbackBroker broker)
+    {
+        for (var subscription : subscriptions)
+        {
+            cancels.add(broker.subscribe(subscription.queue(), delivery -> dispatch(subscription, delivery, null)));
+        }
+    }
+
+    /**
+     * Dispatches a delivery to the lane of its key.
+     *
+     * @param subscription The subscription the message was delivered to.
+     * @param delivery     The delivered message.
+     * @param acks         The ack batcher of the channel, {@code null} if the message needs no acknowledgement.
+     */
+    void dispatch(@NonNull Subscription subscription, @NonNull Delivery delivery, @Nullable AckBatcher acks)
+    {
+        long tag = delivery.getEnvelope().getDeliveryTag();
+
+        if (acks != null)
+        {
+            acks.delivered(tag);
+        }
+
+        lanes[lane(subscription, delivery)].execute(() ->
+        {
+            boolean success = true;
+
+            try
+            {
+                subscription.handler().handle(delivery);
+            }
+            catch (Exception e)
+            {
+                success = false;
+                logger.exception("Error handling message from " + subscription.queue(), e);
+            }
+
+            if (acks == null)
+            {
+                return;
+            }
+
+            try
+            {
+                // A message failing again on redelivery is rejected for good, so it can't loop forever
+                acks.complete(tag, success, requeue && !delivery.getEnvelope().isRedeliver());
+            }
+            catch (IOException | RuntimeException e)
+            {
+                logger.exception("Error acknowledging message from " + subscription.queue(), e);
+            }
+        });
+    }
+
+    /**
+     * Gets the subscriptions.
+     *
+     * @return The subscriptions.
+     */
+    List<Subscription> getSubscriptions()
+    {
+        return subscriptions;
+    }
+
+    /**
+     * Shuts down the lanes. The consumer channels are closed along with their connection.
+     */
+    @Override
+    public void close()
+    {
+        cancels.forEach(Runnable::run);
+
+        for (var lane : lanes)
+        {
+            lane.shutdown();
+        }
+    }
+
+    /**
+     * Picks the lane of a delivery: by key if there is one, spread by delivery tag otherwise.
+     *
+     * @param subscription The subscription the message was delivered to.
+     * @param delivery     The delivered message.
+     * @return The index of the lane.
+     */
+    private int lane(Subscription subscription, Delivery delivery)
+    {
+        int hash = (int) delivery.getEnvelope().getDeliveryTag();
+
+        if (subscription.key() != null)
+        {
+            try
+            {
+                Object key = subscription.key().apply(delivery);
+                hash = key != null ? key.hashCode() : 0;
+            }
+            catch (RuntimeException e)
+            {
+                logger.exception("Error extracting the key of a message from " + subscription.queue(), e);
+            }
+        }
+
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    /**
+     * A queue consumed by the worker.
+     *
+     * @param queue   The queue to consume.
+     * @param handler The handler of the messages.
+     * @param key     Extracts the ordering key of a message, {@code null} if messages are unordered.
+     */
+    record Subscription(String queue, TransferHandler handler, @Nullable Function<Delivery, ?> key)
+    {
+    }
+
+}
@@ -7,6 +7,7 @@ import lombok.NonNull;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import xyz.sorridi.stone.common.data.IOrigin;
+import xyz.sorridi.stone.common.data.Readiness;
 import xyz.sorridi.stone.common.threading.Pool;
 import xyz.sorridi.stone.common.utils.discord.StoneLogger;
 
@@ -25,6 +26,15 @@ public class TransferOrigin implements IOrigin<TransferOrigin>
     @Getter
     private StoneLogger logger;
 
+    @Getter
+    private final Readiness readiness = new Readiness();
+
+    @Getter
+    private final int id = ID.getAndIncrement();
+
+    @Getter
+    private LoopbackBroker loopback;
+
     private ConnectionFactory connectionFactory;
 
     public TransferOrigin()
@@ -85,11 +95,31 @@ public class TransferOrigin implements IOrigin<TransferOrigin>
         return this;
     }
 
+    /**
+     * Routes the workers of this origin through an in-process broker instead of RabbitMQ.
+     * Meant for tests, benchmarks and single-process setups.
+     *
+     * @param loopback The loopback broker, {@code null} to connect to RabbitMQ.
+     * @return The data origin.
+     */
+    public TransferOrigin setLoopback(@Nullable LoopbackBroker loopback)
+    {
+        this.loopback = loopback;
+        return this;
+    }
+
     @Override
     public void setup()
     {
         setReady(false);
- 
+
+        if (loopback != null)
+        {
+            logger.info(id + " - Using the loopback broker");
+            setReady(true);
+            return;
+        }
+
         connectionFactory = new ConnectionFactory();
 
         if (host != null)
@@ -131,12 +161,12 @@ public class TransferOrigin implements IOrigin<TransferOrigin>
                          {
                              try (Connection ignored = getConnection())
                              {
-                                 logger.info(ID.get() + " - Connected to: " + host);
+                                 logger.info(id + " - Connected to: " + host);
                                  setReady(true);
                              }
                              catch (Exception e)
                              {
-                                 logger.error(ID.get() + " - Failed to connect to: " + host);
+                                 logger.error(id + " - Failed to connect to: " + host);
 
                                  try
                                  {
@@ -154,8 +184,13 @@ public class TransferOrigin implements IOrigin<TransferOrigin>
     @Override
     public void shutdown()
     {
+        if (pool == null)
+        {
+            return;
+        }
+
         pool.shutdown();
-        logger.info(ID.get() + " - Disconnected from: " + host);
+        logger.info(id + " - Disconnected from: " + host);
     }
 
     /**
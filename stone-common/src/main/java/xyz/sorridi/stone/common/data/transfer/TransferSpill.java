@@ -0,0 +1,325 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.impl.ContentHeaderPropertyWriter;
+import lombok.NonNull;
+import xyz.sorridi.stone.common.data.transfer.op.TransferMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A file-backed FIFO of {@link TransferMessage}s, used to spill the overflow of a {@link TransferWorker}.
+ * <p>
+ * Records are appended at the end of the file and read back from the front. The offset of the next record
+ * to read is kept in the header of the file, so a restart only picks up the records not read yet. Once the
+ * records read take up most of a large file, the rest is compacted into a new file, swapped in atomically,
+ * so the file stays bounded under steady load. Properties, headers included, are written in the AMQP format.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+class TransferSpill implements AutoCloseable
+{
+    private static final int MAGIC = 0x53504C32; // "SPL2"
+
+    // The magic number and the offset of the next record to read
+    private static final int HEADER = Integer.BYTES + Long.BYTES;
+
+    // The file is compacted once this many bytes were read, and they outweigh those left
+    private static final long COMPACT_THRESHOLD = 4L << 20;
+
+    private final Path path;
+    private final ArrayDeque<CompletableFuture<Void>> futures;
+
+    private RandomAccessFile file;
+    private long readPos, writePos;
+    private volatile int count;
+
+    /**
+     * Opens a spill file, recovering the complete records not read yet.
+     *
+     * @param path The path of the spill file.
+     * @throws IOException If the file cannot be opened, or is not a spill file.
+     */
+    TransferSpill(@NonNull Path path) throws IOException
+    {
+        this.path = path;
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        this.futures = new ArrayDeque<>();
+
+        recover();
+    }
+
+    /**
+     * Appends a message to the spill file.
+     *
+     * @param message The message to append.
+     * @param future  The future to complete once the message is confirmed, may be {@code null}.
+     * @throws IOException If the message cannot be written.
+     */
+    synchronized void append(@NonNull TransferMessage message, CompletableFuture<Void> future) throws IOException
+    {
+        byte[] record = encode(message);
+
+        file.seek(writePos);
+        file.writeInt(record.length);
+        file.write(record);
+
+        writePos += Integer.BYTES + record.length;
+        futures.add(future != null ? future : new CompletableFuture<>());
+        count++;
+    }
+
+    /**
+     * Reads the oldest message back from the spill file.
+     *
+     * @param consumer Receives the message along with its future.
+     * @return {@code false} if the spill file is empty, {@code true} otherwise.
+     * @throws IOException If the message cannot be read.
+     */
+    synchronized boolean poll(@NonNull Entry consumer) throws IOException
+    {
+        if (count == 0)
+        {
+            return false;
+        }
+
+        file.seek(readPos);
+        byte[] record = new byte[file.readInt()];
+        file.readFully(record);
+
+        readPos += Integer.BYTES + record.length;
+        count--;
+
+        var future = futures.poll();
+
+        if (count == 0)
+        {
+            reset();
+        }
+        else
+        {
+            commitReadPos();
+        }
+
+        consumer.accept(decode(record), future != null ? future : new CompletableFuture<>());
+
+        // After handing the message over, so a failed compaction doesn't lose it
+        if (count > 0 && readPos - HEADER >= COMPACT_THRESHOLD && readPos - HEADER >= writePos - readPos)
+        {
+            compact();
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of messages in the spill file.
+     *
+     * @return The number of spilled messages.
+     */
+    int size()
+    {
+        return count;
+    }
+
+    /**
+     * Checks if the spill file is empty.
+     *
+     * @return {@code true} if there are no spilled messages.
+     */
+    boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        file.close();
+    }
+
+    /**
+     * Counts the complete records after the read offset, cutting off a record left half-written.
+     *
+     * @throws IOException If the file cannot be read, or is not a spill file.
+     */
+    private void recover() throws IOException
+    {
+        long length = file.length();
+
+        if (length < HEADER)
+        {
+            reset();
+            return;
+        }
+
+        file.seek(0);
+
+        if (file.readInt() != MAGIC)
+        {
+            throw new IOException("Not a spill file: " + path);
+        }
+
+        long pos = readPos = Math.clamp(file.readLong(), HEADER, length);
+
+        while (pos + Integer.BYTES <= length)
+        {
+            file.seek(pos);
+            int size = file.readInt();
+
+            if (size < 0 || pos + Integer.BYTES + size > length)
+            {
+                break;
+            }
+
+            pos += Integer.BYTES + size;
+            futures.add(new CompletableFuture<>());
+            count++;
+        }
+
+        file.setLength(pos);
+        writePos = pos;
+    }
+
+    /**
+     * Empties the file, leaving only its header.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private void reset() throws IOException
+    {
+        file.setLength(HEADER);
+        file.seek(0);
+        file.writeInt(MAGIC);
+
+        readPos = writePos = HEADER;
+        commitReadPos();
+    }
+
+    /**
+     * Writes the read offset to the header, so the records read are not picked up again after a restart.
+     *
+     * @throws IOException If the header cannot be written.
+     */
+    private void commitReadPos() throws IOException
+    {
+        file.seek(Integer.BYTES);
+        file.writeLong(readPos);
+    }
+
+    /**
+     * Moves the records not read yet to a new file, swapped in for the current one.
+     * A crash at any point leaves either the old file or the new one, both complete.
+     *
+     * @throws IOException If the file cannot be compacted.
+     */
+    private void compact() throws IOException
+    {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+
+        try (var target = new RandomAccessFile(compacted.toFile(), "rw"))
+        {
+            target.setLength(0);
+            target.writeInt(MAGIC);
+            target.writeLong(HEADER);
+
+            byte[] buffer = new byte[64 * 1024];
+            file.seek(readPos);
+
+            for (long left = writePos - readPos; left > 0; )
+            {
+                int read = file.read(buffer, 0, (int) Math.min(buffer.length, left));
+
+                if (read < 0)
+                {
+                    throw new EOFException("Spill file truncated while compacting");
+                }
+
+                target.write(buffer, 0, read);
+                left -= read;
+            }
+
+            target.getFD().sync();
+        }
+
+        file.close();
+
+        try
+        {
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            writePos -= readPos - HEADER;
+            readPos = HEADER;
+        }
+        finally
+        {
+            // The compacted file, or the old one if it couldn't be swapped in
+            file = new RandomAccessFile(path.toFile(), "rw");
+        }
+    }
+
+    private static byte[] encode(TransferMessage message) throws IOException
+    {
+        var bytes = new ByteArrayOutputStream(64 + message.body().length);
+        var out = new DataOutputStream(bytes);
+        var props = message.properties();
+
+        out.writeUTF(message.exchange());
+        out.writeUTF(message.routingKey());
+        out.writeBoolean(props != null);
+
+        if (props != null)
+        {
+            // Weight and body size, as in a content header, read back by the properties constructor
+            out.writeShort(0);
+            out.writeLong(0);
+            props.writePropertiesTo(new ContentHeaderPropertyWriter(out));
+        }
+
+        out.writeInt(message.body().length);
+        out.write(message.body());
+
+        return bytes.toByteArray();
+    }
+
+    private static TransferMessage decode(byte[] record) throws IOException
+    {
+        var in = new DataInputStream(new ByteArrayInputStream(record));
+
+        String exchange = in.readUTF();
+        String routingKey = in.readUTF();
+        AMQP.BasicProperties props = in.readBoolean() ? new AMQP.BasicProperties(in) : null;
+
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+
+        if (in.available() > 0)
+        {
+            throw new EOFException("Corrupted spill record");
+        }
+
+        return new TransferMessage(exchange, routingKey, props, body);
+    }
+
+    /**
+     * Receives a message read back from the spill file.
+     */
+    interface Entry
+    {
+        void accept(TransferMessage message, CompletableFuture<Void> future);
+    }
+
+}
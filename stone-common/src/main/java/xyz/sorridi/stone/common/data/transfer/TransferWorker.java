@@ -1,19 +1,63 @@
 package xyz.sorridi.stone.common.data.transfer;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Delivery;
+import lombok.Getter;
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.sorridi.stone.common.data.transfer.codec.TransferCodec;
 import xyz.sorridi.stone.common.data.transfer.op.TransferAction;
+import xyz.sorridi.stone.common.data.transfer.op.TransferHandler;
+import xyz.sorridi.stone.common.data.transfer.op.TransferMessage;
+import xyz.sorridi.stone.common.immutable.Err;
 import xyz.sorridi.stone.common.threading.Pipeline;
 import xyz.sorridi.stone.common.utils.discord.StoneLogger;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * A worker for transferring data.
  * Handles the processing and transferring of data using a queue and concurrent tasks.
+ * <p>
+ * Actions are run by a configurable number of writer loops, on channels borrowed from a pool
+ * sharing a single long-lived connection. Broken channels and connections are re-created transparently:
+ * a connection recovered by the client keeps its consumers and gets its declarations run again, while a
+ * re-created one gets its declarations, receiver and consumers started anew.
+ * </p>
+ * <p>
+ * Messages sent through {@link #publish(TransferMessage)} complete their future once the broker
+ * confirms them, without blocking the writer loops on {@code waitForConfirms}.
+ * </p>
+ * <p>
+ * The queue is bounded: once full, the {@link OverflowPolicy} decides whether the caller waits,
+ * an action is dropped or messages are spilled to disk. Queue depth, drops, spills and the time
+ * spent waiting are exposed, so a broker outage degrades gracefully instead of filling the heap.
+ * </p>
+ * <p>
+ * Queues subscribed through {@link #consume(String, TransferHandler, Function)} are consumed by a configurable
+ * number of channels with their own prefetch; messages are handled in parallel across keys, in order within a key,
+ * and acknowledged in batches. A message whose handler throws is requeued once, then rejected for good
+ * (see {@link #setRequeue(boolean)}).
+ * </p>
+ * <p>
+ * With a {@link LoopbackBroker} set on the origin, messages and subscriptions go through it in-process,
+ * with the same queueing and overflow behaviour; raw actions, declarations and the receiver are not run.
+ * </p>
  *
  * @author atom7xyz
  * @since 1.0
@@ -22,81 +66,793 @@ public class TransferWorker
 {
     private static final AtomicInteger ID = new AtomicInteger(0);
 
+    @Getter
     private final TransferOrigin origin;
     private final StoneLogger logger;
     private final Pipeline pipeline;
+    private final String name;
+
+    private static final int DEFAULT_CAPACITY = 65_536;
+
+    private final BlockingQueue<Task> queue;
+    private final ChannelPool channels;
+    private final int writers, capacity;
+
+    private OverflowPolicy policy;
+    private long timeout;
+    private TransferSpill spill;
+
+    private final LongAdder dropped, blocked, blockedNanos;
+
+    private final List<TransferAction> declarations;
+    private final List<TransferConsumers.Subscription> subscriptions;
+    private int consumerCount, prefetch, ackBatch, lanes;
+    private boolean requeue;
+    private TransferConsumers consumers;
 
-    private final BlockingQueue<TransferAction> queue;
     private TransferAction receiver;
 
-    private volatile boolean ready;
+    private volatile boolean ready, shutdown;
 
+    /**
+     * Creates a new worker with a single writer loop.
+     *
+     * @param origin The origin to transfer through.
+     */
     public TransferWorker(TransferOrigin origin)
     {
+        this(origin, 1);
+    }
+
+    /**
+     * Creates a new worker with the given number of writer loops.
+     * Each writer loop holds at most one channel at a time.
+     *
+     * @param origin  The origin to transfer through.
+     * @param writers The number of writer loops.
+     */
+    public TransferWorker(TransferOrigin origin, int writers)
+    {
+        this(origin, writers, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new worker with the given number of writer loops and queue capacity.
+     * Actions submitted to a full queue are dropped, unless another {@link OverflowPolicy} is set.
+     *
+     * @param origin   The origin to transfer through.
+     * @param writers  The number of writer loops.
+     * @param capacity The maximum number of queued actions.
+     */
+    public TransferWorker(TransferOrigin origin, int writers, int capacity)
+    {
+        checkArgument(writers > 0, Err.MUST_BE_POSITIVE.expect("writers"));
+        checkArgument(capacity > 0, Err.MUST_BE_POSITIVE.expect("capacity"));
+
         this.origin = origin;
         this.logger = origin.getLogger();
-        this.pipeline = new Pipeline("transfer" + ID.getAndIncrement(), 1, 1);
-        this.queue = new LinkedBlockingQueue<>();
+        this.writers = writers;
+        this.capacity = capacity;
+        this.name = "transfer" + ID.getAndIncrement();
+        this.pipeline = new Pipeline(name, 1, writers);
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.channels = new ChannelPool(origin, pipeline.get(Pipeline.Types.READ), writers);
+        this.policy = OverflowPolicy.DROP_NEWEST;
+        this.dropped = new LongAdder();
+        this.blocked = new LongAdder();
+        this.blockedNanos = new LongAdder();
+        this.declarations = new ArrayList<>();
+        this.subscriptions = new ArrayList<>();
+        this.consumerCount = 1;
+        this.prefetch = 250;
+        this.ackBatch = 50;
+        this.lanes = Runtime.getRuntime().availableProcessors();
+        this.requeue = true;
         this.ready = false;
     }
 
     /**
-     * Starts the worker by initiating two asynchronous tasks:
-     * - One for continuously processing actions from the queue.
+     * Sets how the subscribed queues are consumed. Must be called before {@link #ready()}.
+     *
+     * @param consumers The number of consumer channels per queue.
+     * @param prefetch  The maximum number of unacknowledged messages per channel.
+     * @param ackBatch  The number of handled messages acknowledged at once.
+     * @param lanes     The number of threads the messages are handled on.
+     * @return The transfer worker (for method chaining).
+     */
+    public TransferWorker setConsumers(int consumers, int prefetch, int ackBatch, int lanes)
+    {
+        checkArgument(consumers > 0, Err.MUST_BE_POSITIVE.expect("consumers"));
+        checkArgument(prefetch > 0, Err.MUST_BE_POSITIVE.expect("prefetch"));
+        checkArgument(ackBatch > 0, Err.MUST_BE_POSITIVE.expect("ackBatch"));
+        checkArgument(lanes > 0, Err.MUST_BE_POSITIVE.expect("lanes"));
+
+        this.consumerCount = consumers;
+        this.prefetch = prefetch;
+        this.ackBatch = ackBatch;
+        this.lanes = lanes;
+        return this;
+    }
+
+    /**
+     * Sets whether a message whose handler throws is put back on its queue once, before being rejected
+     * for good when it fails again. Rejected messages are dead-lettered if their queue has a dead-letter
+     * exchange, and lost otherwise. A requeued message goes back to the end of the queue, after the messages
+     * of its key delivered since. Enabled by default. Must be called before {@link #ready()}.
+     *
+     * @param requeue Whether failed messages are requeued once.
+     * @return The transfer worker (for method chaining).
+     */
+    public TransferWorker setRequeue(boolean requeue)
+    {
+        this.requeue = requeue;
+        return this;
+    }
+
+    /**
+     * Adds an action declaring exchanges, queues or bindings.
+     * Declarations run once the origin is ready, before the queues start being consumed.
+     *
+     * @param declaration The declaring action.
+     * @return The transfer worker (for method chaining).
+     */
+    public TransferWorker declare(@NonNull TransferAction declaration)
+    {
+        declarations.add(declaration);
+        return this;
+    }
+
+    /**
+     * Subscribes to a queue, with messages handled in no particular order.
+     * Must be called before {@link #ready()}.
+     *
+     * @param queue   The queue to consume.
+     * @param handler The handler of the messages.
+     * @return The transfer worker (for method chaining).
+     */
+    public TransferWorker consume(@NonNull String queue, @NonNull TransferHandler handler)
+    {
+        return consume(queue, handler, null);
+    }
+
+    /**
+     * Subscribes to a queue. Must be called before {@link #ready()}.
+     * Messages with the same key are handled one after the other, in delivery order;
+     * messages with different keys are handled in parallel.
+     *
+     * @param queue   The queue to consume.
+     * @param handler The handler of the messages.
+     * @param key     Extracts the ordering key of a message (e.g. the player), {@code null} if unordered.
+     * @return The transfer worker (for method chaining).
+     */
+    public TransferWorker consume(@NonNull String queue,
+                                  @NonNull TransferHandler handler,
+                                  @Nullable Function<Delivery, ?> key)
+    {
+        subscriptions.add(new TransferConsumers.Subscription(queue, handler, key));
+        return this;
+    }
+
+    /**
+     * Sets what happens to the actions submitted once the queue is full.
+     *
+     * @param policy  The overflow policy.
+     * @param timeout The maximum time a caller waits for room, used by {@link OverflowPolicy#BLOCK}.
+     * @param unit    The time unit of the timeout.
+     * @return The transfer worker (for method chaining).
+     */
+    public TransferWorker setOverflowPolicy(@NonNull OverflowPolicy policy, long timeout, @NonNull TimeUnit unit)
+    {
+        checkArgument(timeout >= 0, Err.MUST_BE_ZERO_OR_POSITIVE.expect("timeout"));
+
+        this.policy = policy;
+        this.timeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the file the messages are spilled to by {@link OverflowPolicy#SPILL}.
+     * Messages a previous run left in the file without reading them back are queued again.
+     *
+     * @param path The path of the spill file.
+     * @return The transfer worker (for method chaining).
+     * @throws IOException If the spill file cannot be opened.
+     */
+    public TransferWorker setSpillFile(@NonNull Path path) throws IOException
+    {
+        if (spill != null)
+        {
+            spill.close();
+        }
+
+        this.spill = new TransferSpill(path);
+        return this;
+    }
+
+    /**
+     * Starts the worker by initiating the asynchronous tasks:
+     * - The writer loops, continuously processing actions from the queue.
      * - Another for processing the receiver action.
      */
     public void ready()
     {
         this.ready = true;
 
-        // Start the writer task
+        // Start the writer tasks
+        for (int i = 0; i < writers; i++)
+        {
+            CompletableFuture.runAsync(this::write, pipeline.get(Pipeline.Types.WRITE));
+        }
+
+        // Start the reader task
         CompletableFuture.runAsync(() -> {
             waitUntilReady();
 
-            while (ready)
+            var loopback = origin.getLoopback();
+
+            if (loopback != null)
             {
-                try (Connection conn = origin.getConnection(); Channel ch = conn.createChannel())
+                if (!declarations.isEmpty() || receiver != null)
                 {
-                    // Process actions from the queue as long as the connection and channel are open
-                    TransferAction action = queue.take(); // Blocks until an action is available
-                    action.with(conn, ch, origin);
+                    logger.warn("Declarations and receiver are not run in loopback, bind the queues on the broker");
                 }
-                catch (Exception e)
+
+                if (!subscriptions.isEmpty())
                 {
-                    logger.exception("Error processing action in writer task", e);
+                    consumers = new TransferConsumers(name, logger, subscriptions, lanes, consumerCount, prefetch, ackBatch, requeue);
+                    consumers.start(loopback);
                 }
+
+                return;
             }
-        }, pipeline.get(Pipeline.Types.WRITE));
 
-        // Start the reader task
-        CompletableFuture.runAsync(() -> {
-            waitUntilReady();
+            if (!subscriptions.isEmpty())
+            {
+                consumers = new TransferConsumers(name, logger, subscriptions, lanes, consumerCount, prefetch, ackBatch, requeue);
+            }
+
+            Connection conn;
 
-            try (Connection conn = origin.getConnection(); Channel ch = conn.createChannel())
+            try
             {
-                // Process the receiver action once the worker is ready
-                if (receiver != null)
-                {
-                    receiver.with(conn, ch, origin);
-                }
+                conn = channels.getConnection();
             }
             catch (Exception e)
             {
-                logger.exception("Error processing receiver action in reader task", e);
+                logger.exception("Error connecting in reader task", e);
+                return;
             }
+
+            // Queues auto-deleted with the lost connection must exist before the client recovers the consumers
+            channels.onRecovery(this::declare);
+            channels.onReconnect(this::subscribe);
+
+            subscribe(conn);
         }, pipeline.get(Pipeline.Types.READ));
     }
 
+    /**
+     * Runs the declarations, the receiver and the consumers on a connection,
+     * whether the first one or one re-created after a loss.
+     *
+     * @param conn The connection.
+     */
+    private void subscribe(Connection conn)
+    {
+        if (!ready)
+        {
+            return;
+        }
+
+        // Run the declarations before anything gets consumed
+        declare(conn);
+
+        // Process the receiver action once the worker is ready, its channel lives until shutdown
+        if (receiver != null)
+        {
+            try
+            {
+                receiver.with(conn, conn.createChannel(), origin);
+            }
+            catch (Exception e)
+            {
+                logger.exception("Error processing receiver action in reader task", e);
+            }
+        }
+
+        if (consumers != null)
+        {
+            try
+            {
+                consumers.start(conn);
+            }
+            catch (Exception e)
+            {
+                logger.exception("Error starting the consumers in reader task", e);
+            }
+        }
+    }
+
+    /**
+     * Runs the declarations on a connection, each on its own short-lived channel.
+     *
+     * @param conn The connection.
+     */
+    private void declare(Connection conn)
+    {
+        for (var declaration : declarations)
+        {
+            try (Channel ch = conn.createChannel())
+            {
+                declaration.with(conn, ch, origin);
+            }
+            catch (Exception e)
+            {
+                logger.exception("Error processing declaration in reader task", e);
+            }
+        }
+    }
+
+    /**
+     * Writer loop, running the queued actions on pooled channels until the worker is shut down.
+     */
+    private void write()
+    {
+        waitUntilReady();
+
+        while (ready)
+        {
+            Task task;
+
+            try
+            {
+                refill();
+                task = queue.poll(1, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (task != null)
+            {
+                execute(task);
+            }
+        }
+    }
+
+    /**
+     * Executes a task on a pooled channel.
+     * A channel closed under the action gets replaced, and the action is tried once more.
+     *
+     * @param task The task to execute.
+     */
+    private void execute(Task task)
+    {
+        if (!run(task, false))
+        {
+            run(task, true);
+        }
+    }
+
+    /**
+     * Moves spilled messages back to the queue, once at least half of it is free.
+     */
+    private void refill()
+    {
+        var spill = this.spill;
+
+        if (spill == null || spill.isEmpty() || queue.remainingCapacity() < capacity / 2)
+        {
+            return;
+        }
+
+        Task[] read = new Task[1];
+
+        try
+        {
+            while (queue.remainingCapacity() > 0 && spill.poll((message, future) -> read[0] = new Task(message, future)))
+            {
+                // Producers filled the queue in the meantime, this one is run right away
+                if (!queue.offer(read[0]))
+                {
+                    execute(read[0]);
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            logger.exception("Error reading back spilled messages", e);
+        }
+    }
+
+    /**
+     * Queues a task unless the worker has been shut down, in which case its future fails right away.
+     *
+     * @param task The task to queue.
+     * @return {@code true} if the task was queued or spilled, {@code false} if it was dropped or rejected.
+     */
+    private boolean accept(Task task)
+    {
+        if (shutdown)
+        {
+            task.fail(new RejectedExecutionException("The worker has been shut down"));
+            return false;
+        }
+
+        boolean queued = enqueue(task);
+
+        // Queued while shutdown() drained the queue, nothing would ever poll it
+        if (shutdown && queue.remove(task))
+        {
+            task.fail(new RejectedExecutionException("The worker has been shut down"));
+            return false;
+        }
+
+        return queued;
+    }
+
+    /**
+     * Queues a task, applying the overflow policy if the queue is full.
+     *
+     * @param task The task to queue.
+     * @return {@code true} if the task was queued or spilled, {@code false} if it was dropped.
+     */
+    private boolean enqueue(Task task)
+    {
+        var spill = this.spill;
+        boolean spillable = policy == OverflowPolicy.SPILL && spill != null && task.action() instanceof TransferMessage;
+
+        // Once messages are spilled, the following ones go after them to keep the order
+        if (spillable && !spill.isEmpty())
+        {
+            return spill(spill, task);
+        }
+
+        if (queue.offer(task))
+        {
+            return true;
+        }
+
+        switch (policy)
+        {
+            case DROP_NEWEST ->
+            {
+                drop(task);
+                return false;
+            }
+            case DROP_OLDEST ->
+            {
+                while (!queue.offer(task))
+                {
+                    var oldest = queue.poll();
+
+                    if (oldest != null)
+                    {
+                        drop(oldest);
+                    }
+                }
+
+                return true;
+            }
+            case SPILL ->
+            {
+                if (spillable)
+                {
+                    return spill(spill, task);
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        boolean queued;
+
+        try
+        {
+            queued = queue.offer(task, timeout, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+
+        blocked.increment();
+        blockedNanos.add(System.nanoTime() - start);
+
+        if (!queued)
+        {
+            drop(task);
+        }
+
+        return queued;
+    }
+
+    /**
+     * Writes a message task to the spill file, dropping it if the file can't be written.
+     *
+     * @param spill The spill file.
+     * @param task  The message task.
+     * @return {@code true} if the task was spilled, {@code false} if it was dropped.
+     */
+    private boolean spill(TransferSpill spill, Task task)
+    {
+        try
+        {
+            spill.append((TransferMessage) task.action(), task.confirm());
+            return true;
+        }
+        catch (IOException e)
+        {
+            logger.exception("Error spilling message to disk", e);
+            drop(task);
+            return false;
+        }
+    }
+
+    /**
+     * Drops a task, failing its future.
+     *
+     * @param task The task to drop.
+     */
+    private void drop(Task task)
+    {
+        dropped.increment();
+        task.fail(new RejectedExecutionException("Dropped by the " + policy + " overflow policy"));
+    }
+
+    /**
+     * Runs a task on a pooled channel.
+     * Tasks expecting a confirm register the next publish sequence number of the channel first, with a
+     * confirm of their own for each attempt: a broken channel fails the confirms it tracks, possibly before
+     * the publish, so only the attempt that actually published passes its outcome on to the task.
+     *
+     * @param task The task to run.
+     * @param last Whether this is the last attempt for the task.
+     * @return {@code false} if the task failed because its channel got closed, {@code true} otherwise.
+     */
+    private boolean run(Task task, boolean last)
+    {
+        var loopback = origin.getLoopback();
+
+        if (loopback != null)
+        {
+            loop(loopback, task);
+            return true;
+        }
+
+        Channel channel = null;
+        ConfirmTracker tracker = null;
+        CompletableFuture<Void> confirm = null;
+        long seq = 0;
+        boolean broken = false;
+
+        try
+        {
+            channel = channels.borrow();
+
+            if (task.confirm() != null)
+            {
+                tracker = channels.getTracker(channel);
+                confirm = new CompletableFuture<>();
+                seq = channel.getNextPublishSeqNo();
+                tracker.register(seq, confirm);
+            }
+
+            task.action().with(channels.getConnection(), channel, origin);
+
+            if (confirm != null)
+            {
+                confirm.whenComplete((ignored, e) -> relay(task.confirm(), e));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            task.fail(e);
+        }
+        catch (Exception e)
+        {
+            broken = channel != null && !channel.isOpen();
+
+            if (tracker != null)
+            {
+                tracker.remove(seq);
+            }
+
+            if (!broken || last)
+            {
+                task.fail(e);
+            }
+
+            logger.exception("Error processing action in writer task", e);
+        }
+        finally
+        {
+            if (channel != null)
+            {
+                channels.giveBack(channel, broken);
+            }
+        }
+
+        return !broken;
+    }
+
+    /**
+     * Passes the outcome of the confirm of an attempt on to the confirm of its task.
+     *
+     * @param confirm The confirm of the task.
+     * @param cause   The cause of the failure, {@code null} if the message was confirmed.
+     */
+    private static void relay(CompletableFuture<Void> confirm, @Nullable Throwable cause)
+    {
+        if (cause != null)
+        {
+            confirm.completeExceptionally(cause);
+        }
+        else
+        {
+            confirm.complete(null);
+        }
+    }
+
+    /**
+     * Runs a task on the loopback broker, confirming messages once they're routed.
+     *
+     * @param loopback The loopback broker.
+     * @param task     The task to run.
+     */
+    private void loop(LoopbackBroker loopback, Task task)
+    {
+        if (!(task.action() instanceof TransferMessage message))
+        {
+            logger.warn("Only messages can be transferred in loopback, dropping " + task.action());
+            task.fail(new UnsupportedOperationException("Only messages can be transferred in loopback"));
+            return;
+        }
+
+        loopback.publish(message);
+
+        if (task.confirm() != null)
+        {
+            task.confirm().complete(null);
+        }
+    }
+
     /**
      * Submits an action to the worker.
-     * The action is placed in the queue for processing by the worker.
+     * The action is placed in the queue for processing by the worker, following the overflow policy if full.
      *
      * @param action The action to submit.
-     * @return {@code true} if the action was successfully added to the queue; {@code false} otherwise.
+     * @return {@code true} if the action was queued (or spilled); {@code false} if it was dropped,
+     * or the worker has been shut down.
      */
     public boolean submit(TransferAction action)
     {
-        return queue.offer(action);  // Returns false if the action couldn't be added (queue full)
+        return accept(new Task(action, null));
+    }
+
+    /**
+     * Publishes a message through the worker.
+     * The returned future completes once the broker confirms the message, or fails if the
+     * broker rejects it, its channel is closed before the confirm arrives, or the worker has been shut down.
+     *
+     * @param message The message to publish.
+     * @return A CompletableFuture completed once the message is durably on the broker.
+     */
+    public CompletableFuture<Void> publish(@NonNull TransferMessage message)
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        // A dropped or rejected message fails its future on its own
+        accept(new Task(message, future));
+
+        return future;
+    }
+
+    /**
+     * Publishes a message through the worker.
+     *
+     * @param exchange   The exchange to publish to.
+     * @param routingKey The routing key of the message.
+     * @param properties The properties of the message.
+     * @param body       The body of the message.
+     * @return A CompletableFuture completed once the message is durably on the broker.
+     * @see #publish(TransferMessage)
+     */
+    public CompletableFuture<Void> publish(@NonNull String exchange,
+                                           @NonNull String routingKey,
+                                           @Nullable AMQP.BasicProperties properties,
+                                           @NonNull byte[] body)
+    {
+        return publish(new TransferMessage(exchange, routingKey, properties, body));
+    }
+
+    /**
+     * Encodes a typed payload and publishes it through the worker.
+     *
+     * @param exchange   The exchange to publish to.
+     * @param routingKey The routing key of the message.
+     * @param properties The properties of the message.
+     * @param codec      The codec of the payload.
+     * @param value      The payload.
+     * @param <T>        The type of the payload.
+     * @return A CompletableFuture completed once the message is durably on the broker,
+     * or failed if the payload cannot be encoded.
+     * @see #publish(TransferMessage)
+     */
+    public <T> CompletableFuture<Void> publish(@NonNull String exchange,
+                                               @NonNull String routingKey,
+                                               @Nullable AMQP.BasicProperties properties,
+                                               @NonNull TransferCodec<T> codec,
+                                               @NonNull T value)
+    {
+        byte[] body;
+
+        try
+        {
+            body = codec.toBytes(value);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return publish(exchange, routingKey, properties, body);
+    }
+
+    /**
+     * Gets the number of actions waiting in the queue.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of messages waiting in the spill file.
+     *
+     * @return The number of spilled messages.
+     */
+    public int getSpilled()
+    {
+        var spill = this.spill;
+        return spill != null ? spill.size() : 0;
+    }
+
+    /**
+     * Gets the number of actions dropped by the overflow policy.
+     *
+     * @return The number of dropped actions.
+     */
+    public long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the number of times a caller had to wait for room in the queue.
+     *
+     * @return The number of waits.
+     */
+    public long getBlocked()
+    {
+        return blocked.sum();
+    }
+
+    /**
+     * Gets the total time callers spent waiting for room in the queue.
+     *
+     * @param unit The time unit of the result.
+     * @return The total wait time.
+     */
+    public long getBlockedTime(@NonNull TimeUnit unit)
+    {
+        return unit.convert(blockedNanos.sum(), TimeUnit.NANOSECONDS);
     }
 
     /**
@@ -113,20 +869,66 @@ public class TransferWorker
     /**
      * Shuts down the worker.
      * This method stops the worker from processing further actions and shuts down the pipeline.
+     * Actions still queued, and those submitted afterwards, are rejected.
      */
     public void shutdown()
     {
+        shutdown = true;
         ready = false;
         pipeline.shutdown();
+
+        // Closing the shared connection also closes the receiver and consumer channels
+        channels.close();
+
+        if (consumers != null)
+        {
+            consumers.close();
+        }
+
+        Task task;
+
+        while ((task = queue.poll()) != null)
+        {
+            task.fail(new RejectedExecutionException("The worker has been shut down"));
+        }
+
+        // Spilled messages stay on disk, to be queued again by the next worker using the file
+        if (spill != null)
+        {
+            try
+            {
+                spill.close();
+            }
+            catch (IOException e)
+            {
+                logger.exception("Error closing the spill file", e);
+            }
+        }
     }
 
     /**
      * Waits until the origin is ready for processing.
-     * It acquires and then immediately releases the semaphore to synchronize the readiness.
      */
     private void waitUntilReady()
     {
-        origin.acquire(); // Block until the origin is ready
-        origin.release(); // Immediately release it
+        origin.waitUntilReady();
     }
+
+    /**
+     * An action waiting in the queue.
+     *
+     * @param action  The action to run.
+     * @param confirm The future completed by the broker confirm, {@code null} if not tracked.
+     */
+    private record Task(TransferAction action, @Nullable CompletableFuture<Void> confirm)
+    {
+        void fail(Throwable cause)
+        {
+            if (confirm != null)
+            {
+                confirm.completeExceptionally(cause);
+            }
+        }
+    }
+
 }
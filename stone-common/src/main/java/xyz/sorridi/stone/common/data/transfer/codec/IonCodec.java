@@ -0,0 +1,73 @@
+package xyz.sorridi.stone.common.data.transfer.codec;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.ion.IonObjectMapper;
+import lombok.NonNull;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link TransferCodec} writing any Jackson-compatible type as binary Ion.
+ * <p>
+ * The mapper is shared and the reader and writer are bound to the type once, so serializers are
+ * resolved on creation rather than per message. Binary Ion is self-describing, somewhat more compact
+ * than JSON text, and needs no schema to evolve the payload; it's slower to write and read than JSON
+ * though, so hot payloads are better served by a hand-written codec (see {@code CodecBenchmark}).
+ * </p>
+ *
+ * @param <T> The type of the payload.
+ * @author atom7xyz
+ * @since 1.0
+ */
+public final class IonCodec<T> implements TransferCodec<T>
+{
+    private static final IonObjectMapper MAPPER = IonObjectMapper.builderForBinaryWriters().build();
+
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    private IonCodec(Class<T> type)
+    {
+        this.reader = MAPPER.readerFor(type);
+        this.writer = MAPPER.writerFor(type);
+    }
+
+    /**
+     * Creates a codec for the given type.
+     *
+     * @param type The type of the payload.
+     * @param <T>  The type of the payload.
+     * @return The codec.
+     */
+    public static <T> IonCodec<T> of(@NonNull Class<T> type)
+    {
+        return new IonCodec<>(type);
+    }
+
+    @Override
+    public void encode(@NotNull T value, @NotNull TransferBuffer out) throws IOException
+    {
+        writer.writeValue(out.asStream(), value);
+    }
+
+    @Override
+    public T decode(@NotNull ByteBuffer in) throws IOException
+    {
+        if (in.hasArray())
+        {
+            int offset = in.arrayOffset() + in.position();
+            int length = in.remaining();
+
+            in.position(in.limit());
+            return reader.readValue(in.array(), offset, length);
+        }
+
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        return reader.readValue(bytes);
+    }
+
+}
@@ -0,0 +1,395 @@
+package xyz.sorridi.stone.common.data.transfer.codec;
+
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A growable, pooled buffer the {@link TransferCodec}s encode into.
+ * <p>
+ * Buffers are taken with {@link #acquire()} and given back with {@link #close()}, so encoding a message
+ * allocates nothing but the final body. Buffers that grew past {@link #MAX_POOLED} are not pooled again.
+ * The static readers decode the same primitives from a {@link ByteBuffer}.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public final class TransferBuffer implements AutoCloseable
+{
+    public static final int INITIAL_SIZE = 512;
+    public static final int MAX_POOLED = 64 * 1024;
+    public static final int POOL_SIZE = 64;
+
+    private static final ConcurrentLinkedQueue<TransferBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private ByteBuffer buffer;
+
+    private TransferBuffer()
+    {
+        this.buffer = ByteBuffer.allocate(INITIAL_SIZE);
+    }
+
+    /**
+     * Takes a buffer from the pool, or creates one if the pool is empty.
+     *
+     * @return An empty buffer.
+     */
+    public static TransferBuffer acquire()
+    {
+        var buffer = POOL.poll();
+
+        if (buffer == null)
+        {
+            return new TransferBuffer();
+        }
+
+        POOLED.decrementAndGet();
+        buffer.buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives the buffer back to the pool. The buffer must not be used afterwards.
+     */
+    @Override
+    public void close()
+    {
+        if (buffer.capacity() <= MAX_POOLED && POOLED.incrementAndGet() <= POOL_SIZE)
+        {
+            POOL.offer(this);
+        }
+        else
+        {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return The size of the content.
+     */
+    public int size()
+    {
+        return buffer.position();
+    }
+
+    /**
+     * Copies the content into a new array.
+     *
+     * @return The written bytes.
+     */
+    public byte[] toByteArray()
+    {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Views the content as a read-only buffer, valid until the buffer is written again or closed.
+     *
+     * @return The written bytes.
+     */
+    public ByteBuffer view()
+    {
+        return ByteBuffer.wrap(buffer.array(), 0, buffer.position()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Exposes the buffer as an {@link OutputStream}, for encoders that write to streams.
+     *
+     * @return A stream writing into the buffer.
+     */
+    public OutputStream asStream()
+    {
+        return new OutputStream()
+        {
+            @Override
+            public void write(int b)
+            {
+                putByte((byte) b);
+            }
+
+            @Override
+            public void write(byte @NonNull [] b, int off, int len)
+            {
+                putBytes(b, off, len);
+            }
+        };
+    }
+
+    public TransferBuffer putByte(byte value)
+    {
+        ensure(1).put(value);
+        return this;
+    }
+
+    public TransferBuffer putBoolean(boolean value)
+    {
+        return putByte((byte) (value ? 1 : 0));
+    }
+
+    public TransferBuffer putInt(int value)
+    {
+        ensure(Integer.BYTES).putInt(value);
+        return this;
+    }
+
+    public TransferBuffer putLong(long value)
+    {
+        ensure(Long.BYTES).putLong(value);
+        return this;
+    }
+
+    public TransferBuffer putDouble(double value)
+    {
+        ensure(Double.BYTES).putDouble(value);
+        return this;
+    }
+
+    public TransferBuffer putBytes(byte @NonNull [] value, int offset, int length)
+    {
+        ensure(length).put(value, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes an unsigned variable-length integer, 7 bits per byte.
+     *
+     * @param value The value to write.
+     * @return The buffer (for method chaining).
+     */
+    public TransferBuffer putVarInt(int value)
+    {
+        var out = ensure(5);
+
+        while ((value & ~0x7F) != 0)
+        {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.put((byte) value);
+        return this;
+    }
+
+    /**
+     * Writes an unsigned variable-length long, 7 bits per byte.
+     *
+     * @param value The value to write.
+     * @return The buffer (for method chaining).
+     */
+    public TransferBuffer putVarLong(long value)
+    {
+        var out = ensure(10);
+
+        while ((value & ~0x7FL) != 0)
+        {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.put((byte) value);
+        return this;
+    }
+
+    /**
+     * Writes a length-prefixed byte array, {@code null} included.
+     *
+     * @param value The array to write.
+     * @return The buffer (for method chaining).
+     */
+    public TransferBuffer putByteArray(byte @Nullable [] value)
+    {
+        if (value == null)
+        {
+            return putVarInt(0);
+        }
+
+        putVarInt(value.length + 1);
+        return putBytes(value, 0, value.length);
+    }
+
+    /**
+     * Writes a UTF-8 string prefixed by its length, {@code null} included.
+     *
+     * @param value The string to write.
+     * @return The buffer (for method chaining).
+     */
+    public TransferBuffer putString(@Nullable String value)
+    {
+        return putByteArray(value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    /**
+     * Writes a UUID as two longs.
+     *
+     * @param value The UUID to write.
+     * @return The buffer (for method chaining).
+     */
+    public TransferBuffer putUUID(@NonNull UUID value)
+    {
+        var out = ensure(2 * Long.BYTES);
+        out.putLong(value.getMostSignificantBits());
+        out.putLong(value.getLeastSignificantBits());
+        return this;
+    }
+
+    public static boolean getBoolean(@NonNull ByteBuffer in)
+    {
+        return in.get() != 0;
+    }
+
+    /**
+     * Reads an unsigned variable-length integer.
+     *
+     * @param in The buffer to read from.
+     * @return The value read.
+     * @throws IOException If the value is malformed.
+     */
+    public static int getVarInt(@NonNull ByteBuffer in) throws IOException
+    {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads an unsigned variable-length long.
+     *
+     * @param in The buffer to read from.
+     * @return The value read.
+     * @throws IOException If the value is malformed.
+     */
+    public static long getVarLong(@NonNull ByteBuffer in) throws IOException
+    {
+        long value = 0;
+
+        for (int shift = 0; shift < 70; shift += 7)
+        {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varlong");
+    }
+
+    /**
+     * Reads a length-prefixed byte array.
+     *
+     * @param in The buffer to read from.
+     * @return The array read, may be {@code null}.
+     * @throws IOException If the length is malformed.
+     */
+    public static byte @Nullable [] getByteArray(@NonNull ByteBuffer in) throws IOException
+    {
+        int length = getVarInt(in) - 1;
+
+        if (length < 0)
+        {
+            return null;
+        }
+
+        if (length > in.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] value = new byte[length];
+        in.get(value);
+        return value;
+    }
+
+    /**
+     * Reads a UTF-8 string prefixed by its length.
+     *
+     * @param in The buffer to read from.
+     * @return The string read, may be {@code null}.
+     * @throws IOException If the length is malformed.
+     */
+    public static @Nullable String getString(@NonNull ByteBuffer in) throws IOException
+    {
+        int length = getVarInt(in) - 1;
+
+        if (length < 0)
+        {
+            return null;
+        }
+
+        if (length > in.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+
+        String value;
+
+        if (in.hasArray())
+        {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        }
+        else
+        {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return value;
+    }
+
+    /**
+     * Reads a UUID written as two longs.
+     *
+     * @param in The buffer to read from.
+     * @return The UUID read.
+     */
+    public static UUID getUUID(@NonNull ByteBuffer in)
+    {
+        return new UUID(in.getLong(), in.getLong());
+    }
+
+    /**
+     * Makes room for the given number of bytes, doubling the buffer if needed.
+     *
+     * @param bytes The number of bytes about to be written.
+     * @return The underlying buffer.
+     */
+    private ByteBuffer ensure(int bytes)
+    {
+        if (buffer.remaining() < bytes)
+        {
+            int capacity = Math.max(buffer.capacity() << 1, buffer.position() + bytes);
+            buffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), capacity)).position(buffer.position());
+        }
+
+        return buffer;
+    }
+
+}
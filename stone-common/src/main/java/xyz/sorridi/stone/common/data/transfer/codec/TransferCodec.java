@@ -0,0 +1,54 @@
+package xyz.sorridi.stone.common.data.transfer.codec;
+
+import lombok.NonNull;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes a typed transfer payload.
+ * <p>
+ * Implementations write fields straight into a pooled {@link TransferBuffer} and read them back
+ * from a {@link ByteBuffer}, so no reflection runs per message. For payloads where a hand-written
+ * codec isn't worth it, {@link IonCodec} serializes any Jackson-compatible type to binary Ion.
+ * </p>
+ *
+ * @param <T> The type of the payload.
+ * @author atom7xyz
+ * @since 1.0
+ */
+public interface TransferCodec<T>
+{
+    void encode(@NotNull T value, @NotNull TransferBuffer out) throws IOException;
+
+    T decode(@NotNull ByteBuffer in) throws IOException;
+
+    /**
+     * Encodes a value into a message body, using a pooled buffer.
+     *
+     * @param value The value to encode.
+     * @return The encoded bytes.
+     * @throws IOException If the value cannot be encoded.
+     */
+    default byte[] toBytes(@NonNull T value) throws IOException
+    {
+        try (var out = TransferBuffer.acquire())
+        {
+            encode(value, out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Decodes a value from a message body.
+     *
+     * @param body The encoded bytes.
+     * @return The decoded value.
+     * @throws IOException If the body is malformed.
+     */
+    default T fromBytes(byte @NonNull [] body) throws IOException
+    {
+        return decode(ByteBuffer.wrap(body));
+    }
+}
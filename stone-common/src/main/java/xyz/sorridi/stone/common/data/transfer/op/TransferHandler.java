@@ -0,0 +1,22 @@
+package xyz.sorridi.stone.common.data.transfer.op;
+
+import com.rabbitmq.client.Delivery;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Handles a message delivered to a consumer.
+ * <p>
+ * The message is acknowledged once the handler returns. If it throws, the message is put back on its
+ * queue once (see {@code TransferWorker#setRequeue(boolean)}); failing again, or with requeueing disabled,
+ * it's rejected for good: dead-lettered if the queue has a dead-letter exchange, <b>lost</b> otherwise.
+ * Handlers must therefore be idempotent, and queues whose messages can't be lost need a dead-letter exchange.
+ * In loopback, messages need no acknowledgement and a failed message is only logged.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public interface TransferHandler
+{
+    void handle(@NotNull Delivery delivery) throws Exception;
+}
@@ -0,0 +1,34 @@
+package xyz.sorridi.stone.common.data.transfer.op;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import lombok.NonNull;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import xyz.sorridi.stone.common.data.transfer.TransferOrigin;
+
+/**
+ * A single message to be published on an exchange.
+ *
+ * @param exchange   The exchange to publish to.
+ * @param routingKey The routing key of the message.
+ * @param properties The properties of the message.
+ * @param body       The body of the message.
+ * @author atom7xyz
+ * @since 1.0
+ */
+public record TransferMessage(@NonNull String exchange,
+                              @NonNull String routingKey,
+                              @Nullable AMQP.BasicProperties properties,
+                              @NonNull byte[] body) implements TransferAction
+{
+
+    @Override
+    public void with(@NotNull Connection connection, @NotNull Channel channel, @NotNull TransferOrigin origin) throws
+                                                                                                               Exception
+    {
+        channel.basicPublish(exchange, routingKey, properties, body);
+    }
+
+}
@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.NonNull;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 
 /**
  * Pipeline for executing tasks.
@@ -34,6 +35,21 @@ public class Pipeline
         writePool = new Pool("write-" + name, writeThreads);
     }
 
+    /**
+     * Creates a new pipeline running each task on its own virtual thread.
+     * Read and write tasks share the same permits, so at most {@code permits} tasks run at once.
+     *
+     * @param name    The name of the pipeline.
+     * @param permits The maximum number of tasks running at the same time.
+     */
+    public Pipeline(@NonNull String name, int permits)
+    {
+        Semaphore semaphore = new Semaphore(permits);
+
+        readPool = new Pool("read-" + name, semaphore);
+        writePool = new Pool("write-" + name, semaphore);
+    }
+
     /**
      * Gets the executor service for the specified pipeline type.
      *
@@ -8,6 +8,7 @@ import xyz.sorridi.stone.common.immutable.Err;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -19,6 +20,10 @@ import static com.google.common.base.Preconditions.checkArgument;
  * This class provides a thread pool with a fixed number of threads. It allows for named thread pools
  * and can create thread pools with a number of threads equal to the number of processors or a specified number.
  * </p>
+ * <p>
+ * A pool can also run every task on its own virtual thread, with the number of tasks running at the same
+ * time capped by a {@link Semaphore}. Blocking I/O then scales with the load instead of the number of threads.
+ * </p>
  *
  * @author atom7xyz
  * @since 1.0
@@ -34,6 +39,7 @@ public class Pool implements Executor
 
     private final String poolName;
     private final int numThreads;
+    private final boolean virtual;
 
     /**
      * Creates a new generic pool with the number of threads equal to the number of processors.
@@ -75,12 +81,50 @@ public class Pool implements Executor
 
         this.numThreads = numThreads;
         this.poolName = poolName;
+        this.virtual = false;
         this.threadFactory = new ThreadFactoryBuilder()
                 .setNameFormat(poolName + " (#%d)")
                 .build();
         this.executor = Executors.newFixedThreadPool(numThreads, threadFactory);
     }
 
+    /**
+     * Creates a new pool with the given name, running each task on its own virtual thread.
+     * A task waits for a permit before running, so at most as many tasks as the permits run at once.
+     * The permits can be shared between pools to cap them together (e.g. to the size of a connection pool).
+     *
+     * @param poolName The name of the pool.
+     * @param permits  The permits capping the running tasks.
+     */
+    public Pool(@NonNull String poolName, @NonNull Semaphore permits)
+    {
+        checkArgument(permits.availablePermits() > 0, Err.MUST_BE_POSITIVE.expect("permits"));
+
+        this.numThreads = permits.availablePermits();
+        this.poolName = poolName;
+        this.virtual = true;
+
+        ThreadFactory named = new ThreadFactoryBuilder()
+                .setThreadFactory(Thread.ofVirtual().factory())
+                .setNameFormat(poolName + " (#%d)")
+                .build();
+
+        this.threadFactory = task -> named.newThread(() ->
+        {
+            permits.acquireUninterruptibly();
+
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                permits.release();
+            }
+        });
+        this.executor = Executors.newThreadPerTaskExecutor(threadFactory);
+    }
+
     /**
      * Executes a given task in the pool.
      *
@@ -105,6 +149,7 @@ public class Pool implements Executor
                 ", threadFactory=" + threadFactory +
                 ", poolName='" + poolName + '\'' +
                 ", numThreads=" + numThreads +
+                ", virtual=" + virtual +
                 '}';
     }
 
@@ -3,10 +3,12 @@ package xyz.sorridi.stone.common.utils;
 import lombok.NonNull;
 import xyz.sorridi.stone.common.data.structures.SoftMap;
 import xyz.sorridi.stone.common.immutable.Err;
-import xyz.sorridi.stone.common.utils.data.Array;
+import xyz.sorridi.stone.common.utils.data.CacheKey;
+import xyz.sorridi.stone.common.utils.string.Template;
 
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -15,18 +17,25 @@ import static com.google.common.base.Preconditions.checkArgument;
  * <p>
  * This class provides utility methods to perform string replacements.
  * It supports replacing a single target string with an object, as well as replacing multiple targets at once.
- * The class also provides caching of results for efficiency.
+ * Messages are compiled once into a {@link Template}, cached by message and targets, and rendered
+ * in a single pass per call: lookups probe the cache with a reused {@link CacheKey}, so a hit allocates nothing,
+ * and the stored key holds copies of the messages and targets, so changing them afterwards is safe.
+ * Values are not scanned for targets, so a value containing a target is kept as is.
  *
  * @author atom7xyz
  * @since 1.0
  */
 public class Replace
 {
-    public static final SoftMap<Array.Wrapper, Object> CACHE;
+    public static final SoftMap<CacheKey, Object> CACHE;
+
+    // Total number of characters held by the cache
+    private static final long CACHE_WEIGHT = 1 << 20;
 
     static
     {
-        CACHE = new SoftMap<>();
+        CACHE = SoftMap.<CacheKey, Object>weighted(CACHE_WEIGHT, (key, value) -> weigh(value), 10, TimeUnit.MINUTES)
+                       .setName("replace");
     }
 
     /**
@@ -40,19 +49,7 @@ public class Replace
      */
     public static <T> String of(@NonNull String what, @NonNull String target, @NonNull T with)
     {
-        var key = new Array.Wrapper(what, target, with);
-        var val = CACHE.get(key);
-
-        if (val != null)
-        {
-            return (String) val;
-        }
-
-        String result = what.replace(target, with.toString());
-
-        CACHE.putIfAbsent(key, result);
-
-        return result;
+        return compile(what, target).render(with);
     }
 
     /**
@@ -69,23 +66,7 @@ public class Replace
     {
         checkArgument(target.length == with.length, Err.ARGS_NOT_SAME_SIZE.get());
 
-        var key = new Array.Wrapper(what, target, with);
-        var val = CACHE.get(key);
-
-        if (val != null)
-        {
-            return (String) val;
-        }
-
-        String result = what;
-        for (int i = 0; i < target.length; i++)
-        {
-            result = result.replace(target[i], with[i].toString());
-        }
-
-        CACHE.putIfAbsent(key, result);
-
-        return result;
+        return compile(what, target).render(with);
     }
 
     /**
@@ -99,21 +80,7 @@ public class Replace
      */
     public static <T> String[] of(@NonNull String[] what, @NonNull String target, @NonNull T with)
     {
-        var key = new Array.Wrapper(what, target, with);
-        var val = CACHE.get(key);
-
-        if (val != null)
-        {
-            return (String[]) val;
-        }
-
-        String[] result = Arrays.stream(what)
-                .map(s -> s.replace(target, with.toString()))
-                .toArray(String[]::new);
-
-        CACHE.putIfAbsent(key, result);
-
-        return result;
+        return Template.render(compileLines(what, target), with);
     }
 
     /**
@@ -130,26 +97,7 @@ public class Replace
     {
         checkArgument(target.length == with.length, Err.ARGS_NOT_SAME_SIZE.get());
 
-        var key = new Array.Wrapper(what, target, with);
-        var val = CACHE.get(key);
-
-        if (val != null)
-        {
-            return (String[]) val;
-        }
-
-        String[] result = what.clone();
-        for (int i = 0; i < result.length; i++)
-        {
-            for (int j = 0; j < target.length; j++)
-            {
-                result[i] = result[i].replace(target[j], with[j].toString());
-            }
-        }
-
-        CACHE.putIfAbsent(key, result);
-
-        return result;
+        return Template.render(compileLines(what, target), with);
     }
 
     /**
@@ -165,21 +113,7 @@ public class Replace
     @SuppressWarnings("unchecked")
     public static <W extends Collection<String>, T> W of(@NonNull W what, @NonNull String target, @NonNull T with)
     {
-        var key = new Array.Wrapper(what, target, with);
-        var val = CACHE.get(key);
-
-        if (val != null)
-        {
-            return (W) val;
-        }
-
-        W result = (W) what.stream()
-                .map(s -> s.replace(target, with.toString()))
-                .toList();
-
-        CACHE.putIfAbsent(key, result);
-
-        return result;
+        return (W) List.of(Template.render(compileLines(what, target), with));
     }
 
     /**
@@ -197,28 +131,87 @@ public class Replace
     {
         checkArgument(target.length == with.length, Err.ARGS_NOT_SAME_SIZE.get());
 
-        var key = new Array.Wrapper(what, target, with);
-        var val = CACHE.get(key);
+        return (W) List.of(Template.render(compileLines(what, target), with));
+    }
+
+    /**
+     * Gets the compiled template of a string, compiling it on a miss.
+     *
+     * @param what   The string.
+     * @param target The target, or the array of targets.
+     * @return The template.
+     */
+    private static Template compile(String what, Object target)
+    {
+        var probe = CacheKey.probe(what, target, null);
+        var val = CACHE.get(probe);
+        probe.release();
+
+        if (val != null)
+        {
+            return (Template) val;
+        }
+
+        var key = CacheKey.of(what, target, null);
+        var template = target instanceof String[] targets ? Template.of(what, targets) : Template.of(what, (String) target);
+
+        CACHE.putIfAbsent(key, template);
+
+        return template;
+    }
+
+    /**
+     * Gets the compiled templates of an array or a collection of strings, compiling them on a miss.
+     *
+     * @param what   The array or collection of strings.
+     * @param target The target, or the array of targets.
+     * @return The templates, one per string.
+     */
+    private static Template[] compileLines(Object what, Object target)
+    {
+        var probe = CacheKey.probe(what, target, null);
+        var val = CACHE.get(probe);
+        probe.release();
 
         if (val != null)
         {
-            return (W) val;
+            return (Template[]) val;
         }
 
-        W result = (W) what.stream()
-                .map(s ->
-                {
-                    for (int i = 0; i < target.length; i++)
-                    {
-                        s = s.replace(target[i], with[i].toString());
-                    }
-                    return s;
-                })
-                .toList();
+        var key = CacheKey.of(what, target, null);
+        var lines = what instanceof String[] strings ? strings : ((Collection<?>) what).toArray(String[]::new);
+        var targets = target instanceof String[] array ? array : new String[] { (String) target };
+        var templates = Template.of(lines, targets);
+
+        CACHE.putIfAbsent(key, templates);
 
-        CACHE.putIfAbsent(key, result);
+        return templates;
+    }
+
+    /**
+     * Weighs a cached template by the number of characters it holds.
+     *
+     * @param value The cached template, or array of templates.
+     * @return The weight of the template.
+     */
+    private static int weigh(Object value)
+    {
+        if (value instanceof Template template)
+        {
+            return template.getLiteralLength();
+        }
+
+        int weight = 0;
+
+        if (value instanceof Template[] templates)
+        {
+            for (Template template : templates)
+            {
+                weight += template.getLiteralLength();
+            }
+        }
 
-        return result;
+        return weight;
     }
 
     /**
@@ -0,0 +1,212 @@
+package xyz.sorridi.stone.common.utils.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A cache key of up to three parts and a number, with its hash computed once.
+ * <p>
+ * Unlike {@link Array.Wrapper}, parts are compared one level deep: arrays element by element,
+ * anything else with {@code equals}, so a lookup never walks nested structures. Lookups use the
+ * {@link #probe(Object, Object, Object)} key of the current platform thread, reused across calls and
+ * {@link #release() released} after each lookup, so a hit allocates nothing. A virtual thread gets a
+ * fresh probe instead: a thread-local map of its own costs as much as four fresh probes, more lookups than
+ * a short-lived task usually makes (see {@code CacheKeyBenchmark}). Only a miss builds a key {@link
+ * #of(Object, Object, Object) of its own}, copying the arrays and collections it's made of, to store.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public final class CacheKey
+{
+    private static final ThreadLocal<CacheKey> PROBE = ThreadLocal.withInitial(CacheKey::new);
+
+    private Object first, second, third;
+    private long number;
+    private int hash;
+
+    private CacheKey()
+    {
+    }
+
+    /**
+     * Gets the probe key of the current thread, set to the given parts.
+     * The probe is overwritten by the next lookup on the same thread: never store it, store a key
+     * {@link #of(Object, Object, Object) of its own}, and {@link #release()} it once looked up.
+     *
+     * @param first  The first part.
+     * @param second The second part.
+     * @param third  The third part.
+     * @return The probe key.
+     */
+    public static CacheKey probe(Object first, Object second, Object third)
+    {
+        return probeKey().set(0, first, second, third);
+    }
+
+    /**
+     * Gets the probe key of the current thread, set to the given number and parts.
+     * The probe is overwritten by the next lookup on the same thread: never store it, store a key
+     * {@link #of(long, Object, Object) of its own}, and {@link #release()} it once looked up.
+     *
+     * @param number The number, kept unboxed.
+     * @param first  The first part.
+     * @param second The second part.
+     * @return The probe key.
+     */
+    public static CacheKey probe(long number, Object first, Object second)
+    {
+        return probeKey().set(number, first, second, null);
+    }
+
+    /**
+     * Creates a key to be stored in a cache, set to the given parts.
+     * Arrays, lists and sets are copied, so changing them afterwards doesn't corrupt the cache.
+     *
+     * @param first  The first part.
+     * @param second The second part.
+     * @param third  The third part.
+     * @return The key.
+     */
+    public static CacheKey of(Object first, Object second, Object third)
+    {
+        return new CacheKey().set(0, own(first), own(second), own(third));
+    }
+
+    /**
+     * Creates a key to be stored in a cache, set to the given number and parts.
+     * Arrays, lists and sets are copied, so changing them afterwards doesn't corrupt the cache.
+     *
+     * @param number The number, kept unboxed.
+     * @param first  The first part.
+     * @param second The second part.
+     * @return The key.
+     */
+    public static CacheKey of(long number, Object first, Object second)
+    {
+        return new CacheKey().set(number, own(first), own(second), null);
+    }
+
+    /**
+     * Drops the parts of a probe once looked up, so the thread doesn't keep them reachable.
+     */
+    public void release()
+    {
+        first = second = third = null;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+
+        if (!(o instanceof CacheKey other))
+        {
+            return false;
+        }
+
+        return hash == other.hash
+                && number == other.number
+                && equals(first, other.first)
+                && equals(second, other.second)
+                && equals(third, other.third);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CacheKey{" + number + ", " + toString(first) + ", " + toString(second) + ", " + toString(third) + "}";
+    }
+
+    private CacheKey set(long number, Object first, Object second, Object third)
+    {
+        this.number = number;
+        this.first = first;
+        this.second = second;
+        this.third = third;
+
+        int hash = Long.hashCode(number);
+        hash = 31 * hash + hash(first);
+        hash = 31 * hash + hash(second);
+        hash = 31 * hash + hash(third);
+
+        this.hash = hash;
+        return this;
+    }
+
+    /**
+     * Gets the thread-local probe whatever the thread, set to the given number and parts.
+     * Lets the benchmark weigh it against a fresh probe on virtual threads.
+     */
+    static CacheKey threadProbe(long number, Object first, Object second)
+    {
+        return PROBE.get().set(number, first, second, null);
+    }
+
+    private static CacheKey probeKey()
+    {
+        return Thread.currentThread().isVirtual() ? new CacheKey() : PROBE.get();
+    }
+
+    private static Object own(Object part)
+    {
+        if (part instanceof Object[] array)
+        {
+            return array.clone();
+        }
+
+        if (part instanceof List<?> list)
+        {
+            return List.copyOf(list);
+        }
+
+        if (part instanceof Set<?> set)
+        {
+            return Set.copyOf(set);
+        }
+
+        return part;
+    }
+
+    private static int hash(Object part)
+    {
+        if (part instanceof Object[] array)
+        {
+            return Arrays.hashCode(array);
+        }
+
+        return part != null ? part.hashCode() : 0;
+    }
+
+    private static boolean equals(Object a, Object b)
+    {
+        if (a == b)
+        {
+            return true;
+        }
+
+        if (a instanceof Object[] x && b instanceof Object[] y)
+        {
+            return Arrays.equals(x, y);
+        }
+
+        return a != null && a.equals(b);
+    }
+
+    private static String toString(Object part)
+    {
+        return part instanceof Object[] array ? Arrays.toString(array) : String.valueOf(part);
+    }
+
+}
@@ -3,7 +3,7 @@ package xyz.sorridi.stone.common.utils.string;
 import lombok.NonNull;
 import xyz.sorridi.stone.common.data.structures.SoftMap;
 import xyz.sorridi.stone.common.immutable.Err;
-import xyz.sorridi.stone.common.utils.data.Array;
+import xyz.sorridi.stone.common.utils.data.CacheKey;
 
 import java.text.Format;
 import java.text.SimpleDateFormat;
@@ -25,19 +25,22 @@ import static com.google.common.base.Preconditions.checkArgument;
  */
 public class StringConverter
 {
-    public static final SoftMap<Array.Wrapper, String> MILLS_TO_HUMAN_CACHE;
+    public static final SoftMap<CacheKey, String> MILLS_TO_HUMAN_CACHE;
     public static final SoftMap<String, String> CAMELCASE_CACHE;
     public static final SoftMap<String, String> PROPERCASE_CACHE;
     public static final SoftMap<Integer, String> ROMAN_CACHE;
 
     private static final String DEFAULT_DATE_FORMAT = "HH:mm:ss dd/MM/yy";
 
+    // Built once, so a cache hit allocates nothing
+    private static final String INVALID_UNITS = Err.INVALID_ARRAY_LENGTH.expect(5);
+
     static
     {
-        MILLS_TO_HUMAN_CACHE = new SoftMap<>();
-        ROMAN_CACHE = new SoftMap<>();
-        CAMELCASE_CACHE = new SoftMap<>();
-        PROPERCASE_CACHE = new SoftMap<>();
+        MILLS_TO_HUMAN_CACHE = SoftMap.<CacheKey, String>bounded(4_096, 5, TimeUnit.MINUTES).setName("millis-to-human");
+        ROMAN_CACHE = SoftMap.<Integer, String>bounded(1_024).setName("roman");
+        CAMELCASE_CACHE = SoftMap.<String, String>bounded(1_024).setName("camel-case");
+        PROPERCASE_CACHE = SoftMap.<String, String>bounded(1_024).setName("proper-case");
     }
 
     /**
@@ -55,16 +58,19 @@ public class StringConverter
      */
     public static String fromMillisToHuman(@NonNull String[] plurals, @NonNull String[] singulars, long time)
     {
-        checkArgument(plurals.length == 5, Err.INVALID_ARRAY_LENGTH.expect(5));
-        checkArgument(singulars.length == 5, Err.INVALID_ARRAY_LENGTH.expect(5));
+        checkArgument(plurals.length == 5, INVALID_UNITS);
+        checkArgument(singulars.length == 5, INVALID_UNITS);
 
-        var key = new Array.Wrapper(time, plurals, singulars);
-        var val = MILLS_TO_HUMAN_CACHE.get(key);
+        var probe = CacheKey.probe(time, plurals, singulars);
+        var val = MILLS_TO_HUMAN_CACHE.get(probe);
+        probe.release();
 
         if (val != null) {
             return val;
         }
 
+        var key = CacheKey.of(time, plurals, singulars);
+
         long _days = TimeUnit.MILLISECONDS.toDays(time);
         long _hours = TimeUnit.MILLISECONDS.toHours(time);
         long _minutes = TimeUnit.MILLISECONDS.toMinutes(time);
@@ -311,71 +317,72 @@ public class StringConverter
 
         StringBuilder temp = new StringBuilder();
         String result;
+        int left = input;
 
-        while (input >= 1000)
+        while (left >= 1000)
         {
             temp.append("M");
-            input -= 1000;
+            left -= 1000;
         }
-        while (input >= 900)
+        while (left >= 900)
         {
             temp.append("CM");
-            input -= 900;
+            left -= 900;
         }
-        while (input >= 500)
+        while (left >= 500)
         {
             temp.append("D");
-            input -= 500;
+            left -= 500;
         }
-        while (input >= 400)
+        while (left >= 400)
         {
             temp.append("CD");
-            input -= 400;
+            left -= 400;
         }
-        while (input >= 100)
+        while (left >= 100)
         {
             temp.append("C");
-            input -= 100;
+            left -= 100;
         }
-        while (input >= 90)
+        while (left >= 90)
         {
             temp.append("XC");
-            input -= 90;
+            left -= 90;
         }
-        while (input >= 50)
+        while (left >= 50)
         {
             temp.append("L");
-            input -= 50;
+            left -= 50;
         }
-        while (input >= 40)
+        while (left >= 40)
         {
             temp.append("XL");
-            input -= 40;
+            left -= 40;
         }
-        while (input >= 10)
+        while (left >= 10)
         {
             temp.append("X");
-            input -= 10;
+            left -= 10;
         }
-        while (input >= 9)
+        while (left >= 9)
         {
             temp.append("IX");
-            input -= 9;
+            left -= 9;
         }
-        while (input >= 5)
+        while (left >= 5)
         {
             temp.append("V");
-            input -= 5;
+            left -= 5;
         }
-        while (input >= 4)
+        while (left >= 4)
         {
             temp.append("IV");
-            input -= 4;
+            left -= 4;
         }
-        while (input >= 1)
+        while (left >= 1)
         {
             temp.append("I");
-            input -= 1;
+            left -= 1;
         }
 
         result = temp.toString();
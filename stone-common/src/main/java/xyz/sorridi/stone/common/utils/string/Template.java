@@ -0,0 +1,225 @@
+package xyz.sorridi.stone.common.utils.string;
+
+import lombok.NonNull;
+import xyz.sorridi.stone.common.immutable.Err;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A message compiled once into literal and placeholder segments.
+ * <p>
+ * Rendering is a single pass over the segments into a per-thread {@link StringBuilder},
+ * instead of a full {@link String#replace} scan per placeholder. Values are never scanned
+ * for placeholders, so a value containing one (e.g. a player name) is rendered as is.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+public final class Template
+{
+    // Builders grown past this size are dropped instead of being kept by the thread
+    private static final int MAX_RETAINED = 8_192;
+
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    private final String[] literals;
+    private final int[] slots;
+    private final int placeholders;
+    private final int literalLength;
+
+    private Template(String[] literals, int[] slots, int placeholders)
+    {
+        this.literals = literals;
+        this.slots = slots;
+        this.placeholders = placeholders;
+
+        int length = 0;
+
+        for (String literal : literals)
+        {
+            length += literal.length();
+        }
+
+        this.literalLength = length;
+    }
+
+    /**
+     * Compiles a message. At each position, the leftmost placeholder wins, then the longest,
+     * then the first given.
+     *
+     * @param text         The message.
+     * @param placeholders The placeholders, replaced by the value at the same index when rendering.
+     * @return The template.
+     */
+    public static Template of(@NonNull String text, @NonNull String... placeholders)
+    {
+        for (String placeholder : placeholders)
+        {
+            checkArgument(placeholder != null && !placeholder.isEmpty(), Err.MUST_BE_NOT_EMPTY.expect("placeholder"));
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int position = 0;
+
+        while (true)
+        {
+            int found = -1, foundAt = -1;
+
+            for (int i = 0; i < placeholders.length; i++)
+            {
+                int at = text.indexOf(placeholders[i], position);
+
+                if (at < 0)
+                {
+                    continue;
+                }
+
+                if (found < 0 || at < foundAt || (at == foundAt && placeholders[i].length() > placeholders[found].length()))
+                {
+                    found = i;
+                    foundAt = at;
+                }
+            }
+
+            if (found < 0)
+            {
+                break;
+            }
+
+            literals.add(text.substring(position, foundAt));
+            slots.add(found);
+            position = foundAt + placeholders[found].length();
+        }
+
+        literals.add(text.substring(position));
+
+        return new Template(literals.toArray(String[]::new),
+                            slots.stream().mapToInt(Integer::intValue).toArray(),
+                            placeholders.length);
+    }
+
+    /**
+     * Compiles every line of a message.
+     *
+     * @param lines        The lines of the message.
+     * @param placeholders The placeholders, replaced by the value at the same index when rendering.
+     * @return The templates, one per line.
+     */
+    public static Template[] of(@NonNull String[] lines, @NonNull String... placeholders)
+    {
+        Template[] templates = new Template[lines.length];
+
+        for (int i = 0; i < lines.length; i++)
+        {
+            templates[i] = of(lines[i], placeholders);
+        }
+
+        return templates;
+    }
+
+    /**
+     * Renders every line of a message.
+     *
+     * @param lines  The templates of the lines.
+     * @param values The values of the placeholders, in order.
+     * @return The rendered lines.
+     */
+    public static String[] render(@NonNull Template[] lines, @NonNull Object... values)
+    {
+        String[] rendered = new String[lines.length];
+
+        for (int i = 0; i < lines.length; i++)
+        {
+            rendered[i] = lines[i].render(values);
+        }
+
+        return rendered;
+    }
+
+    /**
+     * Renders the message.
+     *
+     * @param values The values of the placeholders, in order.
+     * @return The rendered message.
+     */
+    public String render(@NonNull Object... values)
+    {
+        checkArgument(values.length == placeholders, Err.ARGS_NOT_SAME_SIZE.get());
+
+        if (slots.length == 0)
+        {
+            return literals[0];
+        }
+
+        var buffer = BUFFER.get();
+
+        // A value rendering a template while being appended gets a builder of its own
+        StringBuilder builder = buffer.busy ? new StringBuilder() : buffer.builder;
+        boolean owned = builder == buffer.builder;
+
+        if (owned)
+        {
+            buffer.busy = true;
+        }
+
+        try
+        {
+            builder.setLength(0);
+            builder.ensureCapacity(literalLength + slots.length * 16);
+
+            for (int i = 0; i < slots.length; i++)
+            {
+                builder.append(literals[i]).append(values[slots[i]]);
+            }
+
+            return builder.append(literals[slots.length]).toString();
+        }
+        finally
+        {
+            if (owned)
+            {
+                buffer.busy = false;
+
+                if (builder.capacity() > MAX_RETAINED)
+                {
+                    buffer.builder = new StringBuilder();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of placeholders the template was compiled with.
+     *
+     * @return The number of placeholders.
+     */
+    public int getPlaceholders()
+    {
+        return placeholders;
+    }
+
+    /**
+     * Gets the number of characters of the literal segments.
+     *
+     * @return The length of the literals.
+     */
+    public int getLiteralLength()
+    {
+        return literalLength;
+    }
+
+    /**
+     * The render builder of a thread.
+     */
+    private static final class Buffer
+    {
+        private StringBuilder builder = new StringBuilder();
+        private boolean busy;
+    }
+
+}
@@ -0,0 +1,82 @@
+package xyz.sorridi.stone.common.data.structures;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SoftMapTest
+{
+    @Test
+    void tracksReferencesGivenByTheCaller() throws InterruptedException
+    {
+        var map = new SoftMap<String, String>();
+
+        map.put("put", new SoftReference<>("value"));
+        map.putIfAbsent("absent", new SoftReference<>("value"));
+
+        assertInstanceOf(KeyedSoftReference.class, map.getSoft("put"));
+        assertInstanceOf(KeyedSoftReference.class, map.getSoft("absent"));
+
+        // Enqueued as the GC would once the value is cleared
+        map.getSoft("put").enqueue();
+        map.getSoft("absent").enqueue();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (map.size() > 0 && System.nanoTime() - deadline < 0)
+        {
+            SoftCleaner.drain();
+            Thread.sleep(1);
+        }
+
+        assertEquals(0, map.size());
+        assertEquals(2, map.getCleared());
+    }
+
+    @Test
+    void skipsClearedReferences()
+    {
+        var map = new SoftMap<String, String>();
+        map.put("key", "value");
+
+        map.putIfAbsent("other", new SoftReference<>(null));
+        assertFalse(map.containsKey("other"));
+
+        map.put("key", new SoftReference<>(null));
+        assertFalse(map.containsKey("key"));
+    }
+
+    @Test
+    void doesNotExpungeWhileComputing()
+    {
+        var computed = new SoftMap<Integer, String>();
+        var nested = new SoftMap<Integer, String>();
+
+        // 16 shares its bin with 0: expunging it while 0 is computed is a recursive update
+        computed.put(16, "stale");
+        var stale = computed.getSoft(16);
+        computed.remove(16);
+
+        String value = computed.computeIfAbsent(0, key ->
+        {
+            stale.enqueue();
+            nested.put(1, "nested");
+            return "value";
+        });
+
+        assertEquals("value", value);
+        assertEquals("nested", nested.get(1));
+        assertNull(computed.get(16));
+
+        SoftCleaner.drain();
+        assertTrue(computed.containsKey(0));
+    }
+
+}
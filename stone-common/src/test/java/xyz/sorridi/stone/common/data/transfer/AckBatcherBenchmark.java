@@ -0,0 +1,89 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.Channel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settles a full prefetch window of deliveries, completed in a shuffled order as lanes complete them,
+ * with a single acknowledgement per delivery ({@code batch=1}) or batched ones.
+ * <p>
+ * Each acknowledgement sent burns {@code frameCost} tokens of CPU, standing in for the frame written
+ * to the socket, so the score shows what batching saves per delivery.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AckBatcherBenchmark
+{
+    private static final int PREFETCH = 256;
+
+    @Param({"1", "50"})
+    private int batch;
+
+    @Param({"500"})
+    private long frameCost;
+
+    private AckBatcher acks;
+    private long[] order;
+    private long base;
+
+    @Setup
+    public void setup()
+    {
+        Channel channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class}, (proxy, method, args) ->
+        {
+            Blackhole.consumeCPU(frameCost);
+            return null;
+        });
+
+        acks = new AckBatcher(channel, PREFETCH, batch);
+        order = new long[PREFETCH];
+
+        // Lanes complete out of order: neighbours swapped in pairs
+        for (int i = 0; i < PREFETCH; i++)
+        {
+            order[i] = i ^ 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PREFETCH)
+    public void settle() throws IOException
+    {
+        for (int i = 0; i < PREFETCH; i++)
+        {
+            acks.delivered(base + i + 1);
+        }
+
+        for (long offset : order)
+        {
+            acks.complete(base + offset + 1, true, false);
+        }
+
+        base += PREFETCH;
+    }
+
+}
@@ -0,0 +1,136 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AckBatcherTest
+{
+    @Test
+    void acksTheContiguousPrefixOnly() throws IOException
+    {
+        List<String> calls = new ArrayList<>();
+        var acks = new AckBatcher(channel(calls), 10, 3);
+
+        deliver(acks, 1, 5);
+
+        acks.complete(2, true, false);
+        acks.complete(3, true, false);
+        assertEquals(List.of(), calls);
+
+        // Completes the prefix [1, 3], as large as the batch
+        acks.complete(1, true, false);
+        assertEquals(List.of("ack 3"), calls);
+
+        acks.complete(5, true, false);
+        assertEquals(List.of("ack 3"), calls);
+
+        // Every delivered message is complete, settled below the batch size
+        acks.complete(4, true, false);
+        assertEquals(List.of("ack 3", "ack 5"), calls);
+    }
+
+    @Test
+    void nacksFailuresInBetween() throws IOException
+    {
+        List<String> calls = new ArrayList<>();
+        var acks = new AckBatcher(channel(calls), 10, 10);
+
+        deliver(acks, 1, 4);
+
+        acks.complete(2, false, false);
+        acks.complete(3, false, true);
+        acks.complete(1, true, false);
+        acks.complete(4, true, false);
+
+        assertEquals(List.of("ack 1", "nack 2 drop", "nack 3 requeue", "ack 4"), calls);
+    }
+
+    @Test
+    void wrapsAroundTheRing() throws IOException
+    {
+        List<String> calls = new ArrayList<>();
+        var acks = new AckBatcher(channel(calls), 4, 2);
+
+        // Windows of a full prefetch, completed in reverse, far past the size of the ring
+        for (long start = 1; start <= 400; start += 4)
+        {
+            deliver(acks, start, start + 3);
+
+            for (long tag = start + 3; tag >= start; tag--)
+            {
+                acks.complete(tag, true, false);
+            }
+
+            assertEquals("ack " + (start + 3), calls.getLast());
+        }
+
+        assertEquals(100, calls.size());
+    }
+
+    @Test
+    void ignoresTagsAlreadySettled() throws IOException
+    {
+        List<String> calls = new ArrayList<>();
+        var acks = new AckBatcher(channel(calls), 10, 1);
+
+        deliver(acks, 1, 1);
+        acks.complete(1, true, false);
+        acks.complete(1, false, false);
+
+        assertEquals(List.of("ack 1"), calls);
+    }
+
+    @Test
+    void restartsWithTheTagsOfARecoveredChannel() throws IOException
+    {
+        List<String> calls = new ArrayList<>();
+        var acks = new AckBatcher(channel(calls), 10, 10);
+
+        deliver(acks, 1, 3);
+        acks.complete(1, true, false);
+
+        // The channel was recovered, tags 2 and 3 will never complete
+        deliver(acks, 1, 2);
+        acks.complete(2, true, false);
+        acks.complete(1, true, false);
+
+        assertEquals(List.of("ack 2"), calls);
+    }
+
+    private static void deliver(AckBatcher acks, long from, long to)
+    {
+        for (long tag = from; tag <= to; tag++)
+        {
+            acks.delivered(tag);
+        }
+    }
+
+    /**
+     * Creates a channel recording its acknowledgements.
+     *
+     * @param calls Receives the acknowledgements sent.
+     * @return The channel.
+     */
+    static Channel channel(List<String> calls)
+    {
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class}, (proxy, method, args) ->
+        {
+            switch (method.getName())
+            {
+                case "basicAck" -> calls.add("ack " + args[0]);
+                case "basicNack" -> calls.add("nack " + args[0] + ((boolean) args[2] ? " requeue" : " drop"));
+                default -> throw new UnsupportedOperationException(method.getName());
+            }
+
+            return null;
+        });
+    }
+
+}
@@ -0,0 +1,174 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfirmTrackerTest
+{
+    @Test
+    void growsPastInitialCapacity()
+    {
+        var tracker = new ConfirmTracker();
+        var futures = register(tracker, 1, 200);
+
+        assertEquals(200, tracker.getPending());
+
+        tracker.handleAck(150, true);
+
+        for (int i = 0; i < 200; i++)
+        {
+            assertEquals(i < 150, futures.get(i).isDone(), "seq " + (i + 1));
+        }
+
+        assertEquals(50, tracker.getPending());
+
+        tracker.handleAck(200, true);
+
+        assertTrue(futures.stream().allMatch(future -> future.isDone() && !future.isCompletedExceptionally()));
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    void wrapsAroundTheRing()
+    {
+        var tracker = new ConfirmTracker();
+
+        // Sequence numbers far past the capacity, so the window wraps around the ring many times
+        for (long start = 1; start < 2_000; start += 48)
+        {
+            var futures = register(tracker, start, 48);
+
+            tracker.handleAck(start + 47, true);
+
+            assertTrue(futures.stream().allMatch(CompletableFuture::isDone), "window " + start);
+            assertEquals(0, tracker.getPending());
+        }
+    }
+
+    @Test
+    void growsWhileWrapped()
+    {
+        var tracker = new ConfirmTracker();
+        var first = register(tracker, 1, 60);
+
+        tracker.handleAck(50, true);
+
+        // The window [51, 151) wraps around the end of the initial ring and needs it grown
+        var second = register(tracker, 61, 90);
+
+        assertEquals(100, tracker.getPending());
+
+        tracker.handleAck(150, true);
+
+        assertTrue(first.stream().allMatch(CompletableFuture::isDone));
+        assertTrue(second.stream().allMatch(CompletableFuture::isDone));
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    void settlesSingleConfirmsOutOfOrder()
+    {
+        var tracker = new ConfirmTracker();
+        var futures = register(tracker, 1, 3);
+
+        tracker.handleAck(2, false);
+        tracker.handleNack(3, false);
+
+        assertFalse(futures.get(0).isDone());
+        assertTrue(futures.get(1).isDone() && !futures.get(1).isCompletedExceptionally());
+        assertTrue(futures.get(2).isCompletedExceptionally());
+        assertEquals(1, tracker.getPending());
+
+        tracker.handleAck(1, false);
+
+        assertTrue(futures.get(0).isDone());
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    void nacksFailTheWholeRange()
+    {
+        var tracker = new ConfirmTracker();
+        var futures = register(tracker, 1, 10);
+
+        tracker.handleNack(10, true);
+
+        for (var future : futures)
+        {
+            var cause = future.handle((ignored, e) -> e).join();
+            assertInstanceOf(IOException.class, cause);
+        }
+    }
+
+    @Test
+    void removesWithoutCompleting()
+    {
+        var tracker = new ConfirmTracker();
+        var futures = register(tracker, 1, 3);
+
+        assertSame(futures.get(1), tracker.remove(2));
+        assertNull(tracker.remove(2));
+        assertNull(tracker.remove(42));
+
+        tracker.handleAck(3, true);
+
+        assertTrue(futures.get(0).isDone());
+        assertFalse(futures.get(1).isDone());
+        assertTrue(futures.get(2).isDone());
+    }
+
+    @Test
+    void rejectsConfirmedSequenceNumbers()
+    {
+        var tracker = new ConfirmTracker();
+        register(tracker, 10, 2);
+
+        var stale = new CompletableFuture<Void>();
+        tracker.register(5, stale);
+
+        assertTrue(stale.isCompletedExceptionally());
+    }
+
+    @Test
+    void failsEveryPendingMessage()
+    {
+        var tracker = new ConfirmTracker();
+        var futures = register(tracker, 1, 100);
+        var cause = new IOException("closed");
+
+        tracker.failAll(cause);
+
+        for (var future : futures)
+        {
+            assertSame(cause, future.handle((ignored, e) -> e).join());
+        }
+
+        assertEquals(0, tracker.getPending());
+    }
+
+    private static List<CompletableFuture<Void>> register(ConfirmTracker tracker, long start, int count)
+    {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+
+        for (long seq = start; seq < start + count; seq++)
+        {
+            var future = new CompletableFuture<Void>();
+            tracker.register(seq, future);
+            futures.add(future);
+        }
+
+        return futures;
+    }
+
+}
@@ -0,0 +1,120 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.sorridi.stone.common.data.transfer.op.TransferMessage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Measures the publish and consume throughput of the transfer path, on a {@link LoopbackBroker}
+ * so the numbers don't depend on a broker or the network.
+ * <p>
+ * {@code publish} only waits for the confirms of a batch, {@code roundTrip} also for every message of
+ * the batch to be handled by the consumers, keyed over 64 players. Both go through the worker queue,
+ * the writer loops and, for the round trip, the consumer lanes.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark
+{
+    private static final int BATCH = 1_000;
+    private static final int KEYS = 64;
+
+    @Param({"1", "4"})
+    private int writers;
+
+    @Param({"1", "4"})
+    private int lanes;
+
+    private TransferOrigin origin;
+    private TransferWorker worker;
+    private TransferMessage[] messages;
+    private CompletableFuture<?>[] futures;
+
+    private final AtomicLong handled = new AtomicLong();
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        var broker = new LoopbackBroker().bind("bench", "game", "#");
+
+        origin = new TransferOrigin().setLogger(Logger.getLogger("loopback-benchmark")).setLoopback(broker);
+        origin.setup();
+
+        worker = new TransferWorker(origin, writers)
+                .setConsumers(1, 250, 50, lanes)
+                .consume("bench", delivery -> handled.incrementAndGet(), delivery -> delivery.getEnvelope().getRoutingKey());
+        worker.ready();
+
+        messages = new TransferMessage[BATCH];
+        futures = new CompletableFuture[BATCH];
+
+        for (int i = 0; i < BATCH; i++)
+        {
+            messages[i] = new TransferMessage("game", "player-" + (i % KEYS), null, new byte[64]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        worker.shutdown();
+        origin.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void publish()
+    {
+        publishBatch();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void roundTrip()
+    {
+        publishBatch();
+
+        while (handled.get() < expected)
+        {
+            Thread.onSpinWait();
+        }
+    }
+
+    private void publishBatch()
+    {
+        for (int i = 0; i < BATCH; i++)
+        {
+            futures[i] = worker.publish(messages[i]);
+        }
+
+        expected += BATCH;
+        CompletableFuture.allOf(futures).join();
+    }
+
+}
@@ -0,0 +1,165 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.Delivery;
+import org.junit.jupiter.api.Test;
+import xyz.sorridi.stone.common.data.transfer.op.TransferMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoopbackBrokerTest
+{
+    @Test
+    void routesTheDefaultExchangeByQueueName()
+    {
+        var broker = new LoopbackBroker().declareQueue("players");
+        List<String> received = new ArrayList<>();
+
+        broker.subscribe("players", delivery -> received.add(body(delivery)));
+
+        assertEquals(1, broker.publish(message("", "players", "join")));
+        assertEquals(0, broker.publish(message("", "servers", "lost")));
+
+        assertEquals(List.of("join"), received);
+        assertEquals(2, broker.getPublished());
+        assertEquals(1, broker.getUnroutable());
+    }
+
+    @Test
+    void routesExchangesByBinding()
+    {
+        var broker = new LoopbackBroker()
+                .bind("chat", "events", "chat")
+                .bind("audit", "events", "#");
+
+        List<String> chat = new ArrayList<>(), audit = new ArrayList<>();
+
+        broker.subscribe("chat", delivery -> chat.add(body(delivery)));
+        broker.subscribe("audit", delivery -> audit.add(body(delivery)));
+
+        assertEquals(2, broker.publish(message("events", "chat", "hello")));
+        assertEquals(1, broker.publish(message("events", "trade", "sold")));
+        assertEquals(0, broker.publish(message("other", "chat", "lost")));
+
+        assertEquals(List.of("hello"), chat);
+        assertEquals(List.of("hello", "sold"), audit);
+        assertEquals(1, broker.getUnroutable());
+    }
+
+    @Test
+    void stopsRoutingOnceUnbound()
+    {
+        var broker = new LoopbackBroker().bind("chat", "events", "chat");
+        List<String> received = new ArrayList<>();
+
+        broker.subscribe("chat", delivery -> received.add(body(delivery)));
+        broker.publish(message("events", "chat", "first"));
+
+        broker.unbind("chat", "events", "chat");
+        broker.publish(message("events", "chat", "second"));
+
+        assertEquals(List.of("first"), received);
+    }
+
+    @Test
+    void bindsOnlyOnce()
+    {
+        var broker = new LoopbackBroker().bind("chat", "events", "chat").bind("chat", "events", "chat");
+        List<String> received = new ArrayList<>();
+
+        broker.subscribe("chat", delivery -> received.add(body(delivery)));
+        broker.publish(message("events", "chat", "once"));
+
+        assertEquals(List.of("once"), received);
+    }
+
+    @Test
+    void keepsMessagesUntilSubscribed()
+    {
+        var broker = new LoopbackBroker(2).declareQueue("later");
+
+        broker.publish(message("", "later", "1"));
+        broker.publish(message("", "later", "2"));
+        broker.publish(message("", "later", "3"));
+
+        assertEquals(2, broker.getDepth("later"));
+        assertEquals(1, broker.getDropped());
+
+        List<String> received = new ArrayList<>();
+        broker.subscribe("later", delivery -> received.add(body(delivery)));
+
+        assertEquals(List.of("1", "2"), received);
+        assertEquals(0, broker.getDepth("later"));
+    }
+
+    @Test
+    void keepsMessagesOnceUnsubscribed()
+    {
+        var broker = new LoopbackBroker().declareQueue("queue");
+        List<String> received = new ArrayList<>();
+
+        var cancel = broker.subscribe("queue", delivery -> received.add(body(delivery)));
+        broker.publish(message("", "queue", "1"));
+
+        cancel.run();
+        broker.publish(message("", "queue", "2"));
+
+        assertEquals(List.of("1"), received);
+        assertEquals(1, broker.getDepth("queue"));
+    }
+
+    @Test
+    void spreadsMessagesRoundRobin()
+    {
+        var broker = new LoopbackBroker().declareQueue("work");
+        List<String> first = new ArrayList<>(), second = new ArrayList<>();
+
+        broker.subscribe("work", delivery -> first.add(body(delivery)));
+        broker.subscribe("work", delivery -> second.add(body(delivery)));
+
+        for (int i = 0; i < 4; i++)
+        {
+            broker.publish(message("", "work", String.valueOf(i)));
+        }
+
+        assertEquals(List.of("0", "2"), first);
+        assertEquals(List.of("1", "3"), second);
+    }
+
+    @Test
+    void numbersDeliveriesPerQueue()
+    {
+        var broker = new LoopbackBroker().declareQueue("tags");
+        List<Long> tags = new ArrayList<>();
+
+        broker.subscribe("tags", delivery -> tags.add(delivery.getEnvelope().getDeliveryTag()));
+
+        for (int i = 0; i < 3; i++)
+        {
+            broker.publish(message("", "tags", "m"));
+        }
+
+        assertEquals(List.of(1L, 2L, 3L), tags);
+    }
+
+    @Test
+    void rejectsNoCapacity()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new LoopbackBroker(0));
+    }
+
+    static TransferMessage message(String exchange, String routingKey, String body)
+    {
+        return new TransferMessage(exchange, routingKey, null, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String body(Delivery delivery)
+    {
+        return new String(delivery.getBody(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,130 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import org.junit.jupiter.api.Test;
+import xyz.sorridi.stone.common.data.transfer.op.TransferHandler;
+import xyz.sorridi.stone.common.utils.discord.StoneLogger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferConsumersTest
+{
+    private static final StoneLogger LOGGER = new StoneLogger(Logger.getLogger("transfer-consumers-test"));
+
+    @Test
+    void keepsTheOrderWithinAKey() throws InterruptedException
+    {
+        int keys = 16, perKey = 500;
+
+        Map<Integer, List<Integer>> handled = new ConcurrentHashMap<>();
+        var done = new CountDownLatch(keys * perKey);
+
+        TransferHandler handler = delivery ->
+        {
+            var body = ByteBuffer.wrap(delivery.getBody());
+            handled.computeIfAbsent(body.getInt(), k -> Collections.synchronizedList(new ArrayList<>())).add(body.getInt());
+            done.countDown();
+        };
+
+        var subscription = new TransferConsumers.Subscription("ordered", handler, d -> ByteBuffer.wrap(d.getBody()).getInt());
+        var consumers = new TransferConsumers("ordered-test", LOGGER, List.of(subscription), 4, 1, 1, 1, true);
+
+        long tag = 0;
+
+        for (int seq = 0; seq < perKey; seq++)
+        {
+            for (int key = 0; key < keys; key++)
+            {
+                consumers.dispatch(subscription, delivery(++tag, false, key, seq), null);
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        for (int key = 0; key < keys; key++)
+        {
+            var sequence = handled.get(key);
+
+            for (int seq = 0; seq < perKey; seq++)
+            {
+                assertEquals(seq, sequence.get(seq), "key " + key);
+            }
+        }
+
+        consumers.close();
+    }
+
+    @Test
+    void requeuesAFailedMessageOnce() throws InterruptedException
+    {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        var acks = new AckBatcher(AckBatcherTest.channel(calls), 10, 1);
+
+        TransferHandler handler = delivery ->
+        {
+            throw new IllegalStateException("Failing on purpose");
+        };
+
+        var subscription = new TransferConsumers.Subscription("failing", handler, null);
+        var consumers = new TransferConsumers("failing-test", LOGGER, List.of(subscription), 1, 1, 10, 1, true);
+
+        consumers.dispatch(subscription, delivery(1, false, 0, 0), acks);
+        consumers.dispatch(subscription, delivery(2, true, 0, 0), acks);
+
+        awaitSize(calls, 2);
+        assertEquals(List.of("nack 1 requeue", "nack 2 drop"), calls);
+
+        consumers.close();
+    }
+
+    @Test
+    void dropsAFailedMessageWithoutRequeue() throws InterruptedException
+    {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        var acks = new AckBatcher(AckBatcherTest.channel(calls), 10, 1);
+
+        TransferHandler handler = delivery ->
+        {
+            throw new IllegalStateException("Failing on purpose");
+        };
+
+        var subscription = new TransferConsumers.Subscription("dropping", handler, null);
+        var consumers = new TransferConsumers("dropping-test", LOGGER, List.of(subscription), 1, 1, 10, 1, false);
+
+        consumers.dispatch(subscription, delivery(1, false, 0, 0), acks);
+
+        awaitSize(calls, 1);
+        assertEquals(List.of("nack 1 drop"), calls);
+
+        consumers.close();
+    }
+
+    private static Delivery delivery(long tag, boolean redeliver, int key, int seq)
+    {
+        var body = ByteBuffer.allocate(2 * Integer.BYTES).putInt(key).putInt(seq).array();
+        return new Delivery(new Envelope(tag, redeliver, "", "test"), null, body);
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (list.size() < size && System.nanoTime() < deadline)
+        {
+            Thread.sleep(5);
+        }
+    }
+
+}
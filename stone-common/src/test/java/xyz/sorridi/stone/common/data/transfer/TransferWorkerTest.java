@@ -0,0 +1,230 @@
+package xyz.sorridi.stone.common.data.transfer;
+
+import com.rabbitmq.client.AMQP;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.sorridi.stone.common.data.transfer.codec.TransferBuffer;
+import xyz.sorridi.stone.common.data.transfer.codec.TransferCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the worker end to end on a {@link LoopbackBroker}.
+ */
+class TransferWorkerTest
+{
+    private static final TransferCodec<Move> CODEC = new TransferCodec<>()
+    {
+        @Override
+        public void encode(@NotNull Move value, @NotNull TransferBuffer out)
+        {
+            out.putVarInt(value.player()).putVarInt(value.seq());
+        }
+
+        @Override
+        public Move decode(@NotNull ByteBuffer in) throws IOException
+        {
+            return new Move(TransferBuffer.getVarInt(in), TransferBuffer.getVarInt(in));
+        }
+    };
+
+    private static final String LOGGER = "transfer-worker-test";
+
+    private LoopbackBroker broker;
+    private TransferOrigin origin;
+    private TransferWorker worker;
+
+    @BeforeEach
+    void setup()
+    {
+        broker = new LoopbackBroker().bind("moves", "game", "#");
+        origin = new TransferOrigin().setLogger(Logger.getLogger(LOGGER)).setLoopback(broker);
+        origin.setup();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        worker.shutdown();
+        origin.shutdown();
+    }
+
+    @Test
+    void publishesAndConsumesEveryKey() throws Exception
+    {
+        int players = 8, moves = 250;
+
+        Map<Integer, List<Integer>> handled = new ConcurrentHashMap<>();
+        var done = new CountDownLatch(players * moves);
+
+        worker = new TransferWorker(origin, 2)
+                .setConsumers(1, 100, 10, 4)
+                .consume("moves", delivery ->
+                         {
+                             var move = CODEC.fromBytes(delivery.getBody());
+                             handled.computeIfAbsent(move.player(), k -> Collections.synchronizedList(new ArrayList<>())).add(move.seq());
+                             done.countDown();
+                         }, delivery -> delivery.getEnvelope().getRoutingKey());
+        worker.ready();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int seq = 0; seq < moves; seq++)
+        {
+            for (int player = 0; player < players; player++)
+            {
+                futures.add(worker.publish("game", "player-" + player, null, CODEC, new Move(player, seq)));
+            }
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // Two writer loops may publish out of order, the order is checked with a single writer below
+        for (int player = 0; player < players; player++)
+        {
+            assertEquals(moves, handled.get(player).size(), "player " + player);
+        }
+
+        assertEquals(players * moves, broker.getPublished());
+        assertEquals(0, broker.getUnroutable());
+    }
+
+    @Test
+    void keepsTheOrderOfASingleWriter() throws Exception
+    {
+        int moves = 1_000;
+
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        var done = new CountDownLatch(moves);
+
+        worker = new TransferWorker(origin, 1)
+                .consume("moves", delivery ->
+                         {
+                             handled.add(CODEC.fromBytes(delivery.getBody()).seq());
+                             done.countDown();
+                         }, delivery -> "single");
+        worker.ready();
+
+        for (int seq = 0; seq < moves; seq++)
+        {
+            worker.publish("game", "player", null, CODEC, new Move(0, seq));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        for (int seq = 0; seq < moves; seq++)
+        {
+            assertEquals(seq, handled.get(seq));
+        }
+    }
+
+    @Test
+    void carriesTheProperties() throws Exception
+    {
+        var received = new CompletableFuture<AMQP.BasicProperties>();
+
+        worker = new TransferWorker(origin).consume("moves", delivery -> received.complete(delivery.getProperties()));
+        worker.ready();
+
+        var props = new AMQP.BasicProperties.Builder().contentType("application/x-move").headers(Map.of("version", 2)).build();
+        worker.publish("game", "player", props, CODEC, new Move(1, 1)).get(10, TimeUnit.SECONDS);
+
+        var delivered = received.get(10, TimeUnit.SECONDS);
+        assertEquals("application/x-move", delivered.getContentType());
+        assertEquals(2, delivered.getHeaders().get("version"));
+    }
+
+    @Test
+    void rejectsPublishesAfterShutdown() throws Exception
+    {
+        worker = new TransferWorker(origin);
+        worker.ready();
+        worker.publish("game", "player", null, CODEC, new Move(1, 1)).get(10, TimeUnit.SECONDS);
+
+        worker.shutdown();
+
+        var future = worker.publish("game", "player", null, CODEC, new Move(1, 2));
+        var cause = future.handle((ignored, e) -> e).get(1, TimeUnit.SECONDS);
+
+        assertInstanceOf(RejectedExecutionException.class, cause);
+        assertFalse(worker.submit(LoopbackBrokerTest.message("game", "player", "late")));
+    }
+
+    @Test
+    void failsRawActionsInLoopback() throws Exception
+    {
+        List<LogRecord> warnings = new CopyOnWriteArrayList<>();
+        var handler = new Handler()
+        {
+            @Override
+            public void publish(LogRecord record)
+            {
+                if (record.getLevel() == Level.WARNING)
+                {
+                    warnings.add(record);
+                }
+            }
+
+            @Override
+            public void flush()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+
+        Logger.getLogger(LOGGER).addHandler(handler);
+
+        try
+        {
+            worker = new TransferWorker(origin);
+            worker.ready();
+
+            boolean[] ran = new boolean[1];
+            assertTrue(worker.submit((connection, channel, ignored) -> ran[0] = true));
+
+            // A single writer runs the tasks in order: the raw action is settled once the message is confirmed
+            worker.publish("game", "player", null, CODEC, new Move(1, 1)).get(10, TimeUnit.SECONDS);
+
+            assertFalse(ran[0]);
+            assertEquals(1, warnings.size());
+            assertTrue(warnings.getFirst().getMessage().startsWith("Only messages can be transferred in loopback"));
+            assertEquals(1, broker.getPublished());
+        }
+        finally
+        {
+            Logger.getLogger(LOGGER).removeHandler(handler);
+        }
+    }
+
+    private record Move(int player, int seq)
+    {
+    }
+
+}
@@ -0,0 +1,99 @@
+package xyz.sorridi.stone.common.data.transfer.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the codecs of a {@link PlayerSync} payload with plain JSON strings, run with {@code -prof gc}
+ * to see the allocations.
+ * <p>
+ * {@code binary} is the hand-written {@link TransferCodec} on a pooled {@link TransferBuffer}, {@code ion}
+ * the {@link IonCodec}, {@code json} a Jackson mapper writing and reading a {@code String}, as the plugins
+ * did. The sizes of the encoded payloads are checked by {@link TransferBufferTest}.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark
+{
+    private final PlayerSync sample = PlayerSync.SAMPLE;
+
+    private IonCodec<PlayerSync> ion;
+    private ObjectReader jsonReader;
+    private ObjectWriter jsonWriter;
+
+    private byte[] binaryBytes, ionBytes, jsonBytes;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        var mapper = new ObjectMapper();
+
+        ion = IonCodec.of(PlayerSync.class);
+        jsonReader = mapper.readerFor(PlayerSync.class);
+        jsonWriter = mapper.writerFor(PlayerSync.class);
+
+        binaryBytes = PlayerSync.CODEC.toBytes(sample);
+        ionBytes = ion.toBytes(sample);
+        jsonBytes = jsonWriter.writeValueAsString(sample).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() throws IOException
+    {
+        return PlayerSync.CODEC.toBytes(sample);
+    }
+
+    @Benchmark
+    public PlayerSync binaryDecode() throws IOException
+    {
+        return PlayerSync.CODEC.fromBytes(binaryBytes);
+    }
+
+    @Benchmark
+    public byte[] ionEncode() throws IOException
+    {
+        return ion.toBytes(sample);
+    }
+
+    @Benchmark
+    public PlayerSync ionDecode() throws IOException
+    {
+        return ion.fromBytes(ionBytes);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() throws IOException
+    {
+        return jsonWriter.writeValueAsString(sample).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public PlayerSync jsonDecode() throws IOException
+    {
+        return jsonReader.readValue(new String(jsonBytes, StandardCharsets.UTF_8));
+    }
+
+}
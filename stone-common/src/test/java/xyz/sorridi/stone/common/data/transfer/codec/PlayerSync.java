@@ -0,0 +1,81 @@
+package xyz.sorridi.stone.common.data.transfer.codec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * A typical player-sync payload, shared by the codec tests and benchmark.
+ *
+ * @param id       The player.
+ * @param name     The name of the player.
+ * @param server   The server the player is on, {@code null} if offline.
+ * @param x        The x coordinate.
+ * @param y        The y coordinate.
+ * @param z        The z coordinate.
+ * @param health   The health points.
+ * @param balance  The balance, in cents.
+ * @param lastSeen The last time the player was seen, in milliseconds.
+ * @param flying   Whether the player is flying.
+ */
+public record PlayerSync(UUID id,
+                         String name,
+                         String server,
+                         double x,
+                         double y,
+                         double z,
+                         int health,
+                         long balance,
+                         long lastSeen,
+                         boolean flying)
+{
+    static final PlayerSync SAMPLE = new PlayerSync(UUID.fromString("8667ba71-b85a-4004-af54-457a9734eed7"),
+                                                    "atom7xyz",
+                                                    "lobby-1",
+                                                    128.5,
+                                                    64.0,
+                                                    -2048.25,
+                                                    20,
+                                                    1_250_075L,
+                                                    1_760_000_000_000L,
+                                                    false);
+
+    /**
+     * A hand-written codec, with varints for the counters.
+     */
+    static final TransferCodec<PlayerSync> CODEC = new TransferCodec<>()
+    {
+        @Override
+        public void encode(@NotNull PlayerSync value, @NotNull TransferBuffer out)
+        {
+            out.putUUID(value.id())
+               .putString(value.name())
+               .putString(value.server())
+               .putDouble(value.x())
+               .putDouble(value.y())
+               .putDouble(value.z())
+               .putVarInt(value.health())
+               .putVarLong(value.balance())
+               .putVarLong(value.lastSeen())
+               .putBoolean(value.flying());
+        }
+
+        @Override
+        public PlayerSync decode(@NotNull ByteBuffer in) throws IOException
+        {
+            return new PlayerSync(TransferBuffer.getUUID(in),
+                                  TransferBuffer.getString(in),
+                                  TransferBuffer.getString(in),
+                                  in.getDouble(),
+                                  in.getDouble(),
+                                  in.getDouble(),
+                                  TransferBuffer.getVarInt(in),
+                                  TransferBuffer.getVarLong(in),
+                                  TransferBuffer.getVarLong(in),
+                                  TransferBuffer.getBoolean(in));
+        }
+    };
+
+}
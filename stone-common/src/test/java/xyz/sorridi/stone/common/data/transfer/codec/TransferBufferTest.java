@@ -0,0 +1,230 @@
+package xyz.sorridi.stone.common.data.transfer.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferBufferTest
+{
+    private static final int[] INTS = {0, 1, 127, 128, 255, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+
+    private static final long[] LONGS = {0, 1, 127, 128, 16_384, Integer.MAX_VALUE, 1L << 35, 1L << 56, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+
+    @Test
+    void varIntsRoundTrip() throws IOException
+    {
+        try (var out = TransferBuffer.acquire())
+        {
+            for (int value : INTS)
+            {
+                out.putVarInt(value);
+            }
+
+            var in = out.view();
+
+            for (int value : INTS)
+            {
+                assertEquals(value, TransferBuffer.getVarInt(in));
+            }
+
+            assertFalse(in.hasRemaining());
+        }
+    }
+
+    @Test
+    void varIntsTakeSevenBitsPerByte()
+    {
+        assertEquals(1, varIntSize(0));
+        assertEquals(1, varIntSize(127));
+        assertEquals(2, varIntSize(128));
+        assertEquals(3, varIntSize(16_384));
+        assertEquals(5, varIntSize(-1));
+    }
+
+    @Test
+    void varLongsRoundTrip() throws IOException
+    {
+        try (var out = TransferBuffer.acquire())
+        {
+            for (long value : LONGS)
+            {
+                out.putVarLong(value);
+            }
+
+            var in = out.view();
+
+            for (long value : LONGS)
+            {
+                assertEquals(value, TransferBuffer.getVarLong(in));
+            }
+
+            assertFalse(in.hasRemaining());
+        }
+    }
+
+    @Test
+    void rejectsMalformedVarInts()
+    {
+        var in = ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01});
+        assertThrows(IOException.class, () -> TransferBuffer.getVarInt(in));
+    }
+
+    @Test
+    void stringsRoundTrip() throws IOException
+    {
+        String[] values = {null, "", "atom7xyz", "è già così", "🚀 emoji", "x".repeat(10_000)};
+
+        try (var out = TransferBuffer.acquire())
+        {
+            for (String value : values)
+            {
+                out.putString(value);
+            }
+
+            var in = out.view();
+
+            for (String value : values)
+            {
+                assertEquals(value, TransferBuffer.getString(in));
+            }
+
+            assertFalse(in.hasRemaining());
+        }
+    }
+
+    @Test
+    void stringsRoundTripFromDirectBuffers() throws IOException
+    {
+        byte[] bytes;
+
+        try (var out = TransferBuffer.acquire())
+        {
+            bytes = out.putString("direct").putString(null).toByteArray();
+        }
+
+        var in = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        assertEquals("direct", TransferBuffer.getString(in));
+        assertNull(TransferBuffer.getString(in));
+    }
+
+    @Test
+    void rejectsTruncatedStrings()
+    {
+        byte[] bytes;
+
+        try (var out = TransferBuffer.acquire())
+        {
+            bytes = out.putString("truncated").toByteArray();
+        }
+
+        var in = ByteBuffer.wrap(bytes, 0, bytes.length - 1);
+        assertThrows(BufferUnderflowException.class, () -> TransferBuffer.getString(in));
+    }
+
+    @Test
+    void byteArraysAndUUIDsRoundTrip() throws IOException
+    {
+        var id = UUID.randomUUID();
+
+        try (var out = TransferBuffer.acquire())
+        {
+            out.putByteArray(new byte[]{1, 2, 3}).putByteArray(new byte[0]).putByteArray(null).putUUID(id);
+
+            var in = out.view();
+
+            assertArrayEquals(new byte[]{1, 2, 3}, TransferBuffer.getByteArray(in));
+            assertArrayEquals(new byte[0], TransferBuffer.getByteArray(in));
+            assertNull(TransferBuffer.getByteArray(in));
+            assertEquals(id, TransferBuffer.getUUID(in));
+        }
+    }
+
+    @Test
+    void growsPastItsInitialSize()
+    {
+        try (var out = TransferBuffer.acquire())
+        {
+            for (int i = 0; i < TransferBuffer.INITIAL_SIZE; i++)
+            {
+                out.putLong(i);
+            }
+
+            assertEquals(TransferBuffer.INITIAL_SIZE * Long.BYTES, out.size());
+
+            var in = out.view();
+
+            for (int i = 0; i < TransferBuffer.INITIAL_SIZE; i++)
+            {
+                assertEquals(i, in.getLong());
+            }
+        }
+    }
+
+    @Test
+    void comesBackFromThePoolEmpty()
+    {
+        var first = TransferBuffer.acquire();
+        first.putLong(42);
+        first.close();
+
+        try (var second = TransferBuffer.acquire())
+        {
+            assertEquals(0, second.size());
+        }
+    }
+
+    @Test
+    void viewsAreReadOnly()
+    {
+        try (var out = TransferBuffer.acquire())
+        {
+            assertTrue(out.putInt(1).view().isReadOnly());
+        }
+    }
+
+    @Test
+    void codecsRoundTrip() throws IOException
+    {
+        var sample = PlayerSync.SAMPLE;
+
+        assertEquals(sample, PlayerSync.CODEC.fromBytes(PlayerSync.CODEC.toBytes(sample)));
+
+        var ion = IonCodec.of(PlayerSync.class);
+        assertEquals(sample, ion.fromBytes(ion.toBytes(sample)));
+    }
+
+    @Test
+    void binaryPayloadsAreTheSmallest() throws IOException
+    {
+        var sample = PlayerSync.SAMPLE;
+
+        int binary = PlayerSync.CODEC.toBytes(sample).length;
+        int ion = IonCodec.of(PlayerSync.class).toBytes(sample).length;
+        int json = new ObjectMapper().writeValueAsString(sample).getBytes(StandardCharsets.UTF_8).length;
+
+        assertTrue(binary < ion, "binary " + binary + " >= ion " + ion);
+        assertTrue(ion < json, "ion " + ion + " >= json " + json);
+    }
+
+    private static int varIntSize(int value)
+    {
+        try (var out = TransferBuffer.acquire())
+        {
+            return out.putVarInt(value).size();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package xyz.sorridi.stone.common.threading;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a burst of blocking tasks, standing in for JDBC or AMQP calls, on a fixed pool and on a virtual one.
+ * <p>
+ * The fixed pool has as many threads as the virtual pool has permits. Both overlap as many waits as that,
+ * so throughput follows the concurrency, not the kind of thread: the virtual pool lets it be sized to the
+ * connection pool (e.g. 100) without keeping that many platform threads and their stacks alive.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PoolBenchmark
+{
+    private static final int TASKS = 1_000;
+
+    @Param({"2", "10", "100"})
+    private int threads;
+
+    @Param({"1"})
+    private long blockMillis;
+
+    private Pool fixed, virtual;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        fixed = new Pool("bench-fixed", threads);
+        virtual = new Pool("bench-virtual", new Semaphore(threads));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        fixed.shutdown();
+        virtual.shutdown();
+    }
+
+    @Benchmark
+    public void fixed() throws InterruptedException
+    {
+        burst(fixed);
+    }
+
+    @Benchmark
+    public void virtual() throws InterruptedException
+    {
+        burst(virtual);
+    }
+
+    private void burst(Pool pool) throws InterruptedException
+    {
+        var done = new CountDownLatch(TASKS);
+
+        for (int i = 0; i < TASKS; i++)
+        {
+            pool.execute(() ->
+                         {
+                             try
+                             {
+                                 Thread.sleep(blockMillis);
+                             }
+                             catch (InterruptedException e)
+                             {
+                                 Thread.currentThread().interrupt();
+                             }
+
+                             done.countDown();
+                         });
+        }
+
+        done.await();
+    }
+
+}
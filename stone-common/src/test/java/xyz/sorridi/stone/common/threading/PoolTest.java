@@ -0,0 +1,142 @@
+package xyz.sorridi.stone.common.threading;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PoolTest
+{
+    private static final int TASKS = 200;
+
+    @Test
+    void fixedPoolRunsOnNamedPlatformThreads() throws InterruptedException
+    {
+        var pool = new Pool("fixed-test", 2);
+        var virtual = new AtomicInteger();
+        var named = new AtomicInteger();
+        var done = new CountDownLatch(TASKS);
+
+        for (int i = 0; i < TASKS; i++)
+        {
+            pool.execute(() ->
+                         {
+                             if (Thread.currentThread().isVirtual())
+                             {
+                                 virtual.incrementAndGet();
+                             }
+
+                             if (Thread.currentThread().getName().startsWith("fixed-test (#"))
+                             {
+                                 named.incrementAndGet();
+                             }
+
+                             done.countDown();
+                         });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, virtual.get());
+        assertEquals(TASKS, named.get());
+        assertFalse(pool.isVirtual());
+
+        pool.shutdown();
+    }
+
+    @Test
+    void virtualPoolCapsRunningTasksToPermits() throws InterruptedException
+    {
+        var permits = new Semaphore(4);
+        var pool = new Pool("virtual-test", permits);
+        var running = new AtomicInteger();
+        var peak = new AtomicInteger();
+        var virtual = new AtomicInteger();
+        var done = new CountDownLatch(TASKS);
+
+        for (int i = 0; i < TASKS; i++)
+        {
+            pool.execute(() ->
+                         {
+                             peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+                             if (Thread.currentThread().isVirtual())
+                             {
+                                 virtual.incrementAndGet();
+                             }
+
+                             try
+                             {
+                                 Thread.sleep(1);
+                             }
+                             catch (InterruptedException e)
+                             {
+                                 Thread.currentThread().interrupt();
+                             }
+
+                             running.decrementAndGet();
+                             done.countDown();
+                         });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(TASKS, virtual.get());
+        assertTrue(peak.get() <= 4, "peak " + peak.get());
+        assertTrue(pool.isVirtual());
+        assertEquals(4, pool.getNumThreads());
+
+        // Permits are given back right after each task, past the latch and the executor bookkeeping
+        assertTrue(permits.tryAcquire(4, 10, TimeUnit.SECONDS));
+
+        pool.shutdown();
+    }
+
+    @Test
+    void virtualPipelineSharesPermitsBetweenReadAndWrite() throws InterruptedException
+    {
+        var pipeline = new Pipeline("pipeline-test", 2);
+        var running = new AtomicInteger();
+        var peak = new AtomicInteger();
+        var done = new CountDownLatch(TASKS);
+
+        Runnable task = () ->
+        {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+            try
+            {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            running.decrementAndGet();
+            done.countDown();
+        };
+
+        for (int i = 0; i < TASKS; i++)
+        {
+            pipeline.get(i % 2 == 0 ? Pipeline.Types.READ : Pipeline.Types.WRITE).execute(task);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(peak.get() <= 2, "peak " + peak.get());
+
+        pipeline.shutdown();
+    }
+
+    @Test
+    void virtualPoolRejectsNoPermits()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new Pool("empty", new Semaphore(0)));
+    }
+
+}
@@ -0,0 +1,131 @@
+package xyz.sorridi.stone.common.utils.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Weighs the cache keys of the string utilities, run with {@code -prof gc} to see the allocations.
+ * <p>
+ * {@code platformProbe}, {@code wrapperKey} and {@code storedKey} are single cache hits on the benchmark
+ * thread: the reused probe, the {@link Array.Wrapper} it replaced, and the key built on a miss.
+ * {@code virtualFreshProbe} and {@code virtualThreadProbe} run a few hits on a new virtual thread, as a
+ * task of the virtual pools does, with a fresh probe per lookup or the thread-local one.
+ * </p>
+ *
+ * @author atom7xyz
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark
+{
+    private static final String[] PLURALS = {" days", " hours", " minutes", " seconds", " millis"};
+    private static final String[] SINGULARS = {" day", " hour", " minute", " second", " milli"};
+    private static final long TIME = 93_784_005L;
+
+    private ConcurrentHashMap<CacheKey, String> keys;
+    private ConcurrentHashMap<Array.Wrapper, String> wrappers;
+
+    @Setup
+    public void setup()
+    {
+        keys = new ConcurrentHashMap<>();
+        wrappers = new ConcurrentHashMap<>();
+
+        keys.put(CacheKey.of(TIME, PLURALS, SINGULARS), "1 day 2 hours 3 minutes 4 seconds");
+        wrappers.put(new Array.Wrapper(TIME, PLURALS, SINGULARS), "1 day 2 hours 3 minutes 4 seconds");
+    }
+
+    @Benchmark
+    public String platformProbe()
+    {
+        var probe = CacheKey.probe(TIME, PLURALS, SINGULARS);
+        var value = keys.get(probe);
+        probe.release();
+        return value;
+    }
+
+    @Benchmark
+    public String wrapperKey()
+    {
+        return wrappers.get(new Array.Wrapper(TIME, PLURALS, SINGULARS));
+    }
+
+    @Benchmark
+    public String storedKey()
+    {
+        return keys.get(CacheKey.of(TIME, PLURALS, SINGULARS));
+    }
+
+    @Benchmark
+    public String virtualFreshProbe(Task task) throws InterruptedException
+    {
+        return onVirtualThread(() ->
+                               {
+                                   String value = null;
+
+                                   for (int i = 0; i < task.lookups; i++)
+                                   {
+                                       var probe = CacheKey.probe(TIME, PLURALS, SINGULARS);
+                                       value = keys.get(probe);
+                                       probe.release();
+                                   }
+
+                                   return value;
+                               });
+    }
+
+    @Benchmark
+    public String virtualThreadProbe(Task task) throws InterruptedException
+    {
+        return onVirtualThread(() ->
+                               {
+                                   String value = null;
+
+                                   for (int i = 0; i < task.lookups; i++)
+                                   {
+                                       var probe = CacheKey.threadProbe(TIME, PLURALS, SINGULARS);
+                                       value = keys.get(probe);
+                                       probe.release();
+                                   }
+
+                                   return value;
+                               });
+    }
+
+    private static String onVirtualThread(Lookup lookup) throws InterruptedException
+    {
+        String[] result = new String[1];
+        Thread.ofVirtual().start(() -> result[0] = lookup.run()).join();
+        return result[0];
+    }
+
+    @State(Scope.Benchmark)
+    public static class Task
+    {
+        @Param({"1", "4", "16"})
+        int lookups;
+    }
+
+    private interface Lookup
+    {
+        String run();
+    }
+
+}
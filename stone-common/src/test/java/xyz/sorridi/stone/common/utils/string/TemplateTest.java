@@ -0,0 +1,114 @@
+package xyz.sorridi.stone.common.utils.string;
+
+import org.junit.jupiter.api.Test;
+import xyz.sorridi.stone.common.immutable.Err;
+import xyz.sorridi.stone.common.utils.Replace;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TemplateTest
+{
+    @Test
+    void keepsMessagesWithoutPlaceholders()
+    {
+        String message = "Welcome back!";
+
+        assertSame(message, Template.of(message).render());
+        assertEquals(message, Template.of(message, "%player%").render("atom7xyz"));
+        assertEquals(message.length(), Template.of(message, "%player%").getLiteralLength());
+    }
+
+    @Test
+    void rendersAdjacentPlaceholders()
+    {
+        var template = Template.of("%a%%b%%a%", "%a%", "%b%");
+
+        assertEquals("121", template.render(1, 2));
+        assertEquals("", Template.of("%a%", "%a%").render(""));
+    }
+
+    @Test
+    void picksTheLeftmostPlaceholder()
+    {
+        // "name}" starts inside "{name}", which is found first
+        assertEquals("[atom7xyz]", Template.of("[{name}]", "name}", "{name}").render("x", "atom7xyz"));
+    }
+
+    @Test
+    void picksTheLongestPlaceholderAtTheSamePosition()
+    {
+        assertEquals("atom7xyz!", Template.of("%name%!", "%name", "%name%").render("x", "atom7xyz"));
+        assertEquals("x%!", Template.of("%name%!", "%name").render("x"));
+    }
+
+    @Test
+    void picksTheFirstGivenOfEqualPlaceholders()
+    {
+        assertEquals("first", Template.of("%p%", "%p%", "%p%").render("first", "second"));
+    }
+
+    @Test
+    void neverRescansValues()
+    {
+        var template = Template.of("Hi %player%, you have %coins% coins", "%player%", "%coins%");
+
+        assertEquals("Hi %coins%, you have 5 coins", template.render("%coins%", 5));
+        assertEquals("%b%", Replace.of("%a%", new String[] { "%a%", "%b%" }, "%b%", "x"));
+    }
+
+    @Test
+    void rendersNestedTemplatesOnTheSameThread()
+    {
+        var inner = Template.of("<%v%>", "%v%");
+        var outer = Template.of("[%a%|%b%]", "%a%", "%b%");
+
+        // Rendered while the outer template is appending, with the thread buffer busy
+        Object nested = new Object()
+        {
+            @Override
+            public String toString()
+            {
+                return inner.render(inner.render("deep"));
+            }
+        };
+
+        assertEquals("[<<deep>>|2]", outer.render(nested, 2));
+
+        // The thread buffer is released and reused afterwards
+        assertEquals("[1|2]", outer.render(1, 2));
+        assertEquals("<x>", inner.render("x"));
+    }
+
+    @Test
+    void rendersEveryLine()
+    {
+        var lines = Template.of(new String[] { "Player: %p%", "Rank: %r%", "" }, "%p%", "%r%");
+
+        assertArrayEquals(new String[] { "Player: atom7xyz", "Rank: admin", "" }, Template.render(lines, "atom7xyz", "admin"));
+        assertEquals(List.of("a 1", "b 1"), Replace.of(List.of("a %n%", "b %n%"), "%n%", 1));
+    }
+
+    @Test
+    void rejectsValuesOfAnotherSize()
+    {
+        var template = Template.of("%a% %b%", "%a%", "%b%");
+
+        var fewer = assertThrows(IllegalArgumentException.class, () -> template.render(1));
+        assertEquals(Err.ARGS_NOT_SAME_SIZE.get(), fewer.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> template.render(1, 2, 3));
+        assertThrows(IllegalArgumentException.class, () -> Replace.of("%a%", new String[] { "%a%", "%b%" }, "x"));
+    }
+
+    @Test
+    void rejectsEmptyPlaceholders()
+    {
+        assertThrows(IllegalArgumentException.class, () -> Template.of("text", ""));
+    }
+
+}
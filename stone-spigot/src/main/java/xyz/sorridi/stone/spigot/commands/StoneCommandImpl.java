@@ -42,11 +42,14 @@ public class StoneCommandImpl extends StoneCommand implements FunctionalCommandH
             }
             case 1 ->
             {
-                if (!source.hasPermission(STONE_CLEAN))
-                    break;
+                var sub = args.get(0);
 
-                if (args.get(0).equalsIgnoreCase("clean"))
+                if (sub.equalsIgnoreCase("clean") && source.hasPermission(STONE_CLEAN))
                     c.reply(SoftCleaner.clean());
+                else if (sub.equalsIgnoreCase("data") && source.hasPermission(STONE_STATS))
+                    c.reply(dataMessage());
+                else if (sub.equalsIgnoreCase("caches") && source.hasPermission(STONE_STATS))
+                    c.reply(cachesMessage());
             }
         }
     }
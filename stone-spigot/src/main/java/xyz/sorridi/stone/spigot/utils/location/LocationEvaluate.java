@@ -8,6 +8,8 @@ import xyz.sorridi.stone.common.data.structures.SoftMap;
 import xyz.sorridi.stone.common.immutable.Err;
 import xyz.sorridi.stone.common.utils.data.Array;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Evaluation of locations.
  *
@@ -16,7 +18,8 @@ import xyz.sorridi.stone.common.utils.data.Array;
  */
 public class LocationEvaluate
 {
-    public static final SoftMap<Array.Wrapper, Boolean> IS_NEAR_CACHE = new SoftMap<>();
+    public static final SoftMap<Array.Wrapper, Boolean> IS_NEAR_CACHE = SoftMap.<Array.Wrapper, Boolean>bounded(10_000, 1, TimeUnit.MINUTES)
+                                                                             .setName("location-near");
 
     /**
      * Checks if two locations are equal in terms of X, Y, Z (ignoring yaw and pitch).
@@ -42,14 +42,17 @@ public class StoneCommandImpl extends StoneCommand implements SimpleCommand, Sto
             }
             case 1 ->
             {
-                if (!source.hasPermission(STONE_CLEAN))
+                if (args[0].equalsIgnoreCase("clean") && source.hasPermission(STONE_CLEAN))
                 {
-                    break;
+                    source.sendMessage(Translate.colors(SoftCleaner.clean()));
                 }
-
-                if (args[0].equalsIgnoreCase("clean"))
+                else if (args[0].equalsIgnoreCase("data") && source.hasPermission(STONE_STATS))
                 {
-                    source.sendMessage(Translate.colors(SoftCleaner.clean()));
+                    source.sendMessage(Translate.colors(dataMessage()));
+                }
+                else if (args[0].equalsIgnoreCase("caches") && source.hasPermission(STONE_STATS))
+                {
+                    source.sendMessage(Translate.colors(cachesMessage()));
                 }
             }
         }